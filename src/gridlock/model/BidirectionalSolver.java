@@ -0,0 +1,25 @@
+package gridlock.model;
+
+import java.util.ArrayList;
+
+/**
+ * the BidirectionalSolver Class, a BoardSolver that meets in the middle
+ * Every answer comes from solvePuzzleBidirectional, which searches from the current board
+ * and from all end boards at once; it keeps the solution retention of BoardSolver.
+ */
+class BidirectionalSolver extends BoardSolver {
+
+	/**
+	 * Class constructor for BidirectionalSolver
+	 * @param blocks the list of blocks
+	 * @param gridSize the length of the (square) grid
+	 */
+	public BidirectionalSolver(ArrayList<Block> blocks, int gridSize) {
+		super(blocks, gridSize);
+	}
+
+	@Override
+	public Block solvePuzzle() {
+		return solvePuzzleBidirectional();
+	}
+}
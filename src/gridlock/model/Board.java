@@ -7,31 +7,60 @@ import java.util.ArrayList;
  * Added by Alina
  */
 public class Board {
+	// the classic Rush Hour board: 6x6 with the exit on the right of the third row
+	public static final int DEFAULT_SIZE = 6;
+	public static final int DEFAULT_EXIT_ROW = 2;
+	// cell codes: a block is its index in blocks + 1
+	public static final byte EMPTY = 0;
+	public static final byte BLOCKED = -1;
 
-	private ArrayList<String[]> grid;
+	// the grid, row by row, one code per cell
+	private byte[] cells;
+	private int size;
 	private ArrayList<Block> blocks;
+	private int exitRow;
 
 	/**
 	 * Class constructor for Board
 	 */
 	public Board() {
-		initialiseGrid(6);
+		this(DEFAULT_SIZE, DEFAULT_EXIT_ROW);
+	}
+
+	/**
+	 * Class constructor for Board
+	 * @param size the length of the grid (square)
+	 * @param exitRow the row with the exit on its right, where the "z" car leaves
+	 */
+	public Board(int size, int exitRow) {
+		initialiseGrid(size);
+		this.exitRow = exitRow;
 		this.blocks = new ArrayList<>();
 	}
 	/**
-	 * initialise the grid (size x size)
+	 * initialise the grid (size x size), every cell empty
 	 * @param size the length of the grid (square)
-	 * @post this.grid.size() >= 0
+	 * @post this.getSize() >= 0
 	 */
 	public void initialiseGrid(int size) {
-		this.grid = new ArrayList<>();
-		for (int row = 0; row < size; row++) {
-			String[] newRow = new String[size];
-			for (int col = 0; col < size; col++) {
-				newRow[col] = "*";
-			}
-			this.grid.add(newRow);
-		}
+		this.size = size;
+		this.cells = new byte[size * size];
+	}
+
+	/**
+	 * get the length of the grid
+	 * @return the number of rows (and cols) of the grid
+	 */
+	public int getSize() {
+		return this.size;
+	}
+
+	/**
+	 * get the row of the exit
+	 * @return the row with the exit on its right
+	 */
+	public int getExitRow() {
+		return this.exitRow;
 	}
 
 	/**
@@ -43,20 +72,67 @@ public class Board {
 	}
 
 	/**
-	 * get the grid
-	 * @return the grid
+	 * get the grid as block ids, "*" for an empty cell
+	 * @return a copy of the grid, changing it does not change the board
 	 */
 	public ArrayList<String[]> getGrid() {
-		return this.grid;
+		ArrayList<String[]> grid = new ArrayList<>();
+		for (int row = 0; row < this.size; row++) grid.add(getGridRow(row));
+		return grid;
 	}
 
 	/**
-	 * get the whole row of the grid
+	 * get the whole row of the grid as block ids, "*" for an empty cell
 	 * @param row the row index
-	 * @return the row of the grid
+	 * @return a copy of the row of the grid
 	 */
 	public String[] getGridRow(int row) {
-		return this.grid.get(row);
+		String[] ids = new String[this.size];
+		for (int col = 0; col < this.size; col++) ids[col] = getCellID(row, col);
+		return ids;
+	}
+
+	/**
+	 * get the code of a cell
+	 * @param row the row of the cell
+	 * @param col the col of the cell
+	 * @return EMPTY, BLOCKED or the index of the block covering the cell + 1
+	 */
+	public byte getCell(int row, int col) {
+		return this.cells[row * this.size + col];
+	}
+
+	/**
+	 * set the code of a cell
+	 * @param row the row of the cell
+	 * @param col the col of the cell
+	 * @param code EMPTY, BLOCKED or the index of the block covering the cell + 1
+	 */
+	public void setCell(int row, int col, byte code) {
+		this.cells[row * this.size + col] = code;
+	}
+
+	/**
+	 * check if a cell is empty
+	 * @param row the row of the cell
+	 * @param col the col of the cell
+	 * @return true if no block (and no placeholder) covers the cell
+	 */
+	public boolean isEmpty(int row, int col) {
+		return this.cells[row * this.size + col] == EMPTY;
+	}
+
+	/**
+	 * get the id of the block covering a cell
+	 * @param row the row of the cell
+	 * @param col the col of the cell
+	 * @return the id of the block, "*" for an empty cell and "-" for a BLOCKED one
+	 */
+	public String getCellID(int row, int col) {
+		byte code = getCell(row, col);
+		if (code == EMPTY) return "*";
+		if (code == BLOCKED) return "-";
+		return getBlockID(code - 1);
 	}
 
 	/**
@@ -89,11 +165,20 @@ public class Board {
 	 * set the grid
 	 */
 	public void setGrid() {
-		for (Block block : this.blocks) {
-			for (Integer[] position : block.getPosition()) {
-				this.grid.get(position[0])[position[1]] = block.getID();
+		for (int block = 0; block < this.blocks.size(); block++) {
+			for (Integer[] position : this.blocks.get(block).getPosition()) {
+				setCell(position[0], position[1], (byte) (block + 1));
 			}
 		}
 	}
 
+	/**
+	 * copy the grid of another board of the same size
+	 * @param other the board to copy from
+	 */
+	public void copyGrid(Board other) {
+		this.size = other.size;
+		this.cells = other.cells.clone();
+	}
+
 }
@@ -0,0 +1,152 @@
+package gridlock.model;
+
+/**
+ * BoardCode class, the canonical 128-bit code of a board configuration
+ * The code does not depend on the order of the blocks nor on their ids (other than "z"), so every
+ * board showing the same cars in the same places gets the same code, and it can be compared, hashed,
+ * used as a map key or written to disk as it is. One long marks the starting (top/left) cell of every
+ * block, bit row * gridSize + col; the other holds 2 bits per block, in the order of those cells:
+ * VERTICAL for a vertical block and LONG for a block of 3 (else 2).
+ * The "z" car is the last horizontal block starting on the exit row, so any grid up to 8x8 with
+ * at most 32 blocks of 2 or 3 cells and "z" on the exit row has a code. The grid size and exit row
+ * are not part of the code and have to be known to decode it.
+ */
+public final class BoardCode {
+	private static final int MAX_CELLS = Long.SIZE;
+	private static final int MAX_BLOCKS = Long.SIZE / 2;
+	private static final int VERTICAL = 1;
+	private static final int LONG = 2;
+	// ids given to the blocks of a decoded board, in the order of their starting cells ("z" aside)
+	private static final String IDS = "abcdefghijklmnopqrstuvwxyABCDEFGHIJKLMNOPQRSTUVWXYZ";
+
+	private final long starts;
+	private final long kinds;
+
+	/**
+	 * Class constructor for BoardCode
+	 * @param starts the starting cell of every block, bit row * gridSize + col
+	 * @param kinds 2 bits per block, in the order of the starting cells
+	 */
+	public BoardCode(long starts, long kinds) {
+		this.starts = starts;
+		this.kinds = kinds;
+	}
+
+	/**
+	 * get the code of a game-board
+	 * @param board the game-board
+	 * @return the code of the current board state, null if it cannot be encoded
+	 */
+	public static BoardCode encode(GameBoard board) {
+		return encode(board.getBoard());
+	}
+
+	/**
+	 * get the code of a board
+	 * @param board the board
+	 * @return the code of the board, null if it cannot be encoded
+	 */
+	public static BoardCode encode(Board board) {
+		int gridSize = board.getSize();
+		if (gridSize * gridSize > MAX_CELLS || board.getBlocks().size() > MAX_BLOCKS) return null;
+		Block z = null;
+		for (Block block : board.getBlocks()) {
+			if (block.getID().equals("z")) z = block;
+		}
+		if (z == null || !z.isHorizontal() || z.getRow() != board.getExitRow()) return null;
+		long starts = 0L;
+		int[] kindAt = new int[gridSize * gridSize];
+		for (Block block : board.getBlocks()) {
+			if (block.getSize() != 2 && block.getSize() != 3) return null;
+			if (block != z && block.isHorizontal() && block.getRow() == z.getRow() && block.getCol() > z.getCol()) {
+				return null;
+			}
+			int cell = block.getRow() * gridSize + block.getCol();
+			starts |= 1L << cell;
+			kindAt[cell] = (block.isHorizontal() ? 0 : VERTICAL) | (block.getSize() == 3 ? LONG : 0);
+		}
+		long kinds = 0L;
+		int n = 0;
+		for (long rest = starts; rest != 0; rest &= rest - 1) {
+			kinds |= (long) kindAt[Long.numberOfTrailingZeros(rest)] << (2 * n++);
+		}
+		return new BoardCode(starts, kinds);
+	}
+
+	/**
+	 * build the board of this code
+	 * @param gridSize the length of the (square) grid
+	 * @param exitRow the row with the exit on its right
+	 * @return a new GameBoard, blocks in the order of their starting cells, null if the code is not
+	 * a valid board of that grid
+	 */
+	public GameBoard decode(int gridSize, int exitRow) {
+		if (gridSize * gridSize > MAX_CELLS || (gridSize * gridSize < MAX_CELLS && this.starts >>> (gridSize * gridSize) != 0)) {
+			return null;
+		}
+		// "z" is the last horizontal block starting on the exit row
+		int zCell = -1;
+		int n = 0;
+		for (long rest = this.starts; rest != 0; rest &= rest - 1) {
+			int cell = Long.numberOfTrailingZeros(rest);
+			if ((getKind(n++) & VERTICAL) == 0 && cell / gridSize == exitRow) zCell = cell;
+		}
+		if (zCell == -1) return null;
+		GameBoard board = new GameBoard(gridSize, exitRow);
+		n = 0;
+		int others = 0;
+		for (long rest = this.starts; rest != 0; rest &= rest - 1) {
+			int cell = Long.numberOfTrailingZeros(rest);
+			int kind = getKind(n++);
+			String id = cell == zCell ? "z" : IDS.substring(others, ++others);
+			if (!board.setBlock(id, cell / gridSize, cell % gridSize, (kind & LONG) != 0 ? 3 : 2, (kind & VERTICAL) == 0)) {
+				return null;
+			}
+		}
+		return board;
+	}
+
+	/** (Private)
+	 * get the kind of a block
+	 * @param n the index of the block, in the order of the starting cells
+	 * @return the VERTICAL and LONG bits of the block
+	 */
+	private int getKind(int n) {
+		return (int) (this.kinds >>> (2 * n)) & 3;
+	}
+
+	/**
+	 * read a code written by toString
+	 * @param text 32 hex digits
+	 * @return the code
+	 * @throws NumberFormatException if the text is not a code
+	 */
+	public static BoardCode parse(String text) {
+		if (text.length() != 32) throw new NumberFormatException("not a board code: " + text);
+		return new BoardCode(Long.parseUnsignedLong(text.substring(0, 16), 16),
+				Long.parseUnsignedLong(text.substring(16), 16));
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) return true;
+		if (!(obj instanceof BoardCode)) return false;
+		BoardCode c = (BoardCode) obj;
+		return this.starts == c.starts && this.kinds == c.kinds;
+	}
+
+	@Override
+	public int hashCode() {
+		long hash = this.starts * 0x9E3779B97F4A7C15L + this.kinds;
+		return (int) (hash ^ (hash >>> 32));
+	}
+
+	/**
+	 * write the code as text
+	 * @return the code as 32 hex digits
+	 */
+	@Override
+	public String toString() {
+		return String.format("%016x%016x", this.starts, this.kinds);
+	}
+}
@@ -0,0 +1,490 @@
+package gridlock.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * BoardLayout class holding the fixed geometry of a puzzle for the solver
+ * A block never changes its direction, size or the row/col it slides along, so once the
+ * layout is known a whole board state is a byte offset per block plus a bitboard of the
+ * occupied cells (bit row * gridSize + col).
+ */
+final class BoardLayout {
+	// offsets are packed 3 bits each, 21 blocks per long and two longs per state
+	static final int PACKED_BLOCKS = 21;
+	static final int MAX_BLOCKS = 2 * PACKED_BLOCKS;
+	// a bitboard has a bit per cell
+	static final int MAX_GRID_SIZE = 8;
+	// fixed, so equal layouts give equal Zobrist hashes in every run
+	private static final long ZOBRIST_SEED = 0x5DEECE66DL;
+
+	private final int gridSize;
+	private final String[] ids;
+	private final boolean[] horizontal;
+	private final int[] sizes;
+	private final int[] lines;
+	private final long[][] masks;
+	private final long[][] zobrist;
+	private final int goalBlock;
+	private final int moveCapacity;
+
+	/**
+	 * Class constructor for BoardLayout
+	 * @param blocks the blocks of the board, in the order their offsets will be stored
+	 * @param gridSize the length of the (square) grid
+	 */
+	BoardLayout(List<Block> blocks, int gridSize) {
+		int count = blocks.size();
+		if (gridSize > MAX_GRID_SIZE || count > MAX_BLOCKS) {
+			throw new IllegalArgumentException("board too large for the solver: " + gridSize + "x" + gridSize
+					+ " with " + count + " blocks");
+		}
+		this.gridSize = gridSize;
+		this.ids = new String[count];
+		this.horizontal = new boolean[count];
+		this.sizes = new int[count];
+		this.lines = new int[count];
+		this.masks = new long[count][];
+		this.zobrist = new long[count][];
+		SplittableRandom random = new SplittableRandom(ZOBRIST_SEED);
+		int goal = -1;
+		for (int b = 0; b < count; b++) {
+			Block block = blocks.get(b);
+			this.ids[b] = block.getID();
+			this.horizontal[b] = block.isHorizontal();
+			this.sizes[b] = block.getSize();
+			this.lines[b] = block.isHorizontal() ? block.getRow() : block.getCol();
+			this.masks[b] = new long[gridSize - this.sizes[b] + 1];
+			for (int offset = 0; offset < this.masks[b].length; offset++) {
+				long mask = 0L;
+				for (int i = 0; i < this.sizes[b]; i++) {
+					mask |= 1L << (this.horizontal[b]
+							? this.lines[b] * gridSize + offset + i
+							: (offset + i) * gridSize + this.lines[b]);
+				}
+				this.masks[b][offset] = mask;
+			}
+			this.zobrist[b] = new long[this.masks[b].length];
+			for (int offset = 0; offset < this.zobrist[b].length; offset++) this.zobrist[b][offset] = random.nextLong();
+			if (this.ids[b].equals("z")) goal = b;
+		}
+		this.goalBlock = goal;
+		// a block can at most reach every other offset on its line
+		int capacity = 0;
+		for (long[] blockMasks : this.masks) capacity += blockMasks.length - 1;
+		this.moveCapacity = capacity;
+	}
+
+	/**
+	 * get the length of the grid
+	 * @return the number of rows (and cols) of the grid
+	 */
+	int getGridSize() {
+		return this.gridSize;
+	}
+
+	/**
+	 * get the number of blocks in the layout
+	 * @return the number of blocks
+	 */
+	int getBlockCount() {
+		return this.ids.length;
+	}
+
+	/**
+	 * get the id of a block
+	 * @param block the index of the block
+	 * @return the id of the block
+	 */
+	String getID(int block) {
+		return this.ids[block];
+	}
+
+	/**
+	 * check the direction of a block
+	 * @param block the index of the block
+	 * @return true if the block slides along a row
+	 */
+	boolean isHorizontal(int block) {
+		return this.horizontal[block];
+	}
+
+	/**
+	 * get the row (horizontal) or col (vertical) a block slides along
+	 * @param block the index of the block
+	 * @return the fixed row/col of the block
+	 */
+	int getLine(int block) {
+		return this.lines[block];
+	}
+
+	/**
+	 * get the size of a block
+	 * @param block the index of the block
+	 * @return the number of cells the block covers
+	 */
+	int getSize(int block) {
+		return this.sizes[block];
+	}
+
+	/**
+	 * get the index of the red car
+	 * @return the index of the "z" block, -1 if there is none
+	 */
+	int getGoalBlock() {
+		return this.goalBlock;
+	}
+
+	/**
+	 * get the furthest offset a block can reach on its row/col
+	 * @param block the index of the block
+	 * @return the largest valid offset
+	 */
+	int getMaxOffset(int block) {
+		return this.masks[block].length - 1;
+	}
+
+	/**
+	 * get the cells covered by a block at a given offset
+	 * @param block the index of the block
+	 * @param offset the starting row (vertical) or col (horizontal) of the block
+	 * @return the bitboard of the covered cells
+	 */
+	long getMask(int block, int offset) {
+		return this.masks[block][offset];
+	}
+
+	/**
+	 * read the offsets of a list of blocks laid out like this layout
+	 * @param blocks the blocks, in layout order
+	 * @return the offset of every block
+	 */
+	byte[] getOffsets(List<Block> blocks) {
+		byte[] offsets = new byte[blocks.size()];
+		for (int b = 0; b < offsets.length; b++) {
+			Block block = blocks.get(b);
+			offsets[b] = (byte) (this.horizontal[b] ? block.getCol() : block.getRow());
+		}
+		return offsets;
+	}
+
+	/**
+	 * build the occupancy bitboard of a state
+	 * @param offsets the offset of every block
+	 * @return the bitboard of the occupied cells
+	 */
+	long getOccupancy(byte[] offsets) {
+		long occupancy = 0L;
+		for (int b = 0; b < offsets.length; b++) occupancy |= this.masks[b][offsets[b]];
+		return occupancy;
+	}
+
+	/**
+	 * pack the offsets of the first PACKED_BLOCKS blocks, 3 bits each
+	 * @param offsets the offset of every block
+	 * @return the low word of the packed state
+	 */
+	long packLow(byte[] offsets) {
+		return pack(offsets, 0);
+	}
+
+	/**
+	 * pack the offsets of the remaining blocks, 3 bits each
+	 * @param offsets the offset of every block
+	 * @return the high word of the packed state
+	 */
+	long packHigh(byte[] offsets) {
+		return pack(offsets, PACKED_BLOCKS);
+	}
+
+	/**
+	 * unpack a state packed with packLow/packHigh
+	 * @param low the low word of the packed state
+	 * @param high the high word of the packed state
+	 * @param offsets the array to fill with the offset of every block
+	 */
+	void unpack(long low, long high, byte[] offsets) {
+		for (int b = 0; b < offsets.length; b++) {
+			long word = b < PACKED_BLOCKS ? low : high;
+			offsets[b] = (byte) ((word >>> (3 * (b % PACKED_BLOCKS))) & 7);
+		}
+	}
+
+	/**
+	 * update the low word of a packed state for a move, instead of packing the whole state again
+	 * @param low the low word before the move
+	 * @param offsets the offset of every block before the move
+	 * @param move the packed move
+	 * @return the low word after the move
+	 */
+	long packLow(long low, byte[] offsets, int move) {
+		return repack(low, 0, offsets, move);
+	}
+
+	/**
+	 * update the high word of a packed state for a move, instead of packing the whole state again
+	 * @param high the high word before the move
+	 * @param offsets the offset of every block before the move
+	 * @param move the packed move
+	 * @return the high word after the move
+	 */
+	long packHigh(long high, byte[] offsets, int move) {
+		return repack(high, PACKED_BLOCKS, offsets, move);
+	}
+
+	/** (Private)
+	 * flip the 3 bits of the moved block in a packed word, if the word holds that block
+	 * @param word the packed word before the move
+	 * @param from the index of the first block packed in the word
+	 * @param offsets the offset of every block before the move
+	 * @param move the packed move
+	 * @return the packed word after the move
+	 */
+	private long repack(long word, int from, byte[] offsets, int move) {
+		int block = getMoveBlock(move);
+		if (block < from || block >= from + PACKED_BLOCKS) return word;
+		int offset = offsets[block];
+		return word ^ (long) (offset ^ (offset + getMoveDelta(move))) << (3 * (block - from));
+	}
+
+	/**
+	 * Zobrist hash of a state: the xor of one random key per block and offset
+	 * @param offsets the offset of every block
+	 * @return the hash of the state
+	 */
+	long hash(byte[] offsets) {
+		long hash = 0L;
+		for (int b = 0; b < offsets.length; b++) hash ^= this.zobrist[b][offsets[b]];
+		return hash;
+	}
+
+	/**
+	 * update a Zobrist hash for a move, in constant time
+	 * @param hash the hash before the move
+	 * @param offsets the offset of every block before the move
+	 * @param move the packed move
+	 * @return the hash after the move
+	 */
+	long hashMove(long hash, byte[] offsets, int move) {
+		int block = getMoveBlock(move);
+		int offset = offsets[block];
+		return hash ^ this.zobrist[block][offset] ^ this.zobrist[block][offset + getMoveDelta(move)];
+	}
+
+	/** (Private)
+	 * pack up to PACKED_BLOCKS offsets into a long
+	 * @param offsets the offset of every block
+	 * @param from the index of the first block to pack
+	 * @return the packed word
+	 */
+	private long pack(byte[] offsets, int from) {
+		long word = 0L;
+		int to = Math.min(offsets.length, from + PACKED_BLOCKS);
+		for (int b = from; b < to; b++) word |= (long) offsets[b] << (3 * (b - from));
+		return word;
+	}
+
+	/**
+	 * pack a move into an int, (block << 4) | (delta + 8)
+	 * @param block the index of the block
+	 * @param delta the signed number of cells the block slides
+	 * @return the packed move
+	 */
+	static int encodeMove(int block, int delta) {
+		return block << 4 | (delta + 8);
+	}
+
+	/**
+	 * get the block of a packed move
+	 * @param move the packed move
+	 * @return the index of the block
+	 */
+	static int getMoveBlock(int move) {
+		return move >>> 4;
+	}
+
+	/**
+	 * get the slide of a packed move
+	 * @param move the packed move
+	 * @return the signed number of cells the block slides
+	 */
+	static int getMoveDelta(int move) {
+		return (move & 15) - 8;
+	}
+
+	/**
+	 * get the largest number of moves any state can have, i.e. the size of a move buffer
+	 * @return the move capacity
+	 */
+	int getMoveCapacity() {
+		return this.moveCapacity;
+	}
+
+	/**
+	 * list every slide from a state without building the states they lead to,
+	 * block by block, towards the start of the line first and nearest first
+	 * @param offsets the offset of every block
+	 * @param occupancy the occupied cells
+	 * @param moves the buffer to fill with packed moves, at least getMoveCapacity() long
+	 * @return the number of moves
+	 */
+	int getMoves(byte[] offsets, long occupancy, int[] moves) {
+		int count = 0;
+		for (int block = 0; block < offsets.length; block++) {
+			int offset = offsets[block];
+			long[] blockMasks = this.masks[block];
+			long others = occupancy & ~blockMasks[offset];
+			for (int newOffset = offset - 1; newOffset >= 0 && (others & blockMasks[newOffset]) == 0; newOffset--) {
+				moves[count++] = encodeMove(block, newOffset - offset);
+			}
+			for (int newOffset = offset + 1; newOffset < blockMasks.length
+					&& (others & blockMasks[newOffset]) == 0; newOffset++) {
+				moves[count++] = encodeMove(block, newOffset - offset);
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * make a move in place
+	 * @param offsets the offset of every block, updated
+	 * @param occupancy the occupied cells before the move
+	 * @param move the packed move
+	 * @return the occupied cells after the move
+	 */
+	long applyMove(byte[] offsets, long occupancy, int move) {
+		int block = getMoveBlock(move);
+		int offset = offsets[block];
+		int newOffset = offset + getMoveDelta(move);
+		offsets[block] = (byte) newOffset;
+		return occupancy & ~this.masks[block][offset] | this.masks[block][newOffset];
+	}
+
+	/**
+	 * take back a move made with applyMove
+	 * @param offsets the offset of every block, updated
+	 * @param occupancy the occupied cells after the move
+	 * @param move the packed move
+	 * @return the occupied cells before the move
+	 */
+	long undoMove(byte[] offsets, long occupancy, int move) {
+		return applyMove(offsets, occupancy, encodeMove(getMoveBlock(move), -getMoveDelta(move)));
+	}
+
+	/**
+	 * Check if a move from a state that is not an end state brings the red car to its goal
+	 * @param offsets the offset of every block before the move
+	 * @param move the packed move
+	 * @return true if the move ends the game
+	 */
+	boolean reachesGoal(byte[] offsets, int move) {
+		int block = getMoveBlock(move);
+		return block == this.goalBlock && offsets[block] + getMoveDelta(move) == getMaxOffset(block);
+	}
+
+	/**
+	 * Check if the goal of the game is fulfilled
+	 * @param offsets the offset of every block
+	 * @return true if the red car is on the goal position
+	 */
+	boolean isGoal(byte[] offsets) {
+		return this.goalBlock != -1 && offsets[this.goalBlock] == getMaxOffset(this.goalBlock);
+	}
+
+	/**
+	 * add every end board state that could be reached from a starting state to a table,
+	 * i.e. the red car on its goal and every other block on its own row/col, without passing
+	 * the blocks that share that row/col with it (the same family the level generator builds)
+	 * @param start the offset of every block in the starting state
+	 * @param goals the table to add the packed end states to
+	 * @param limit the largest number of end states wanted
+	 * @return false if there are more than limit end states
+	 */
+	boolean addGoalStates(byte[] start, StateTable goals, int limit) {
+		if (this.goalBlock == -1) return true;
+		int count = start.length;
+		// place blocks line by line, in their order along the line
+		Integer[] order = new Integer[count];
+		for (int b = 0; b < count; b++) order[b] = b;
+		Arrays.sort(order, (x, y) -> this.horizontal[x] != this.horizontal[y]
+				? (this.horizontal[x] ? -1 : 1)
+				: this.lines[x] != this.lines[y] ? this.lines[x] - this.lines[y] : start[x] - start[y]);
+		int[] placement = new int[count];
+		int[] previous = new int[count];
+		for (int i = 0; i < count; i++) {
+			placement[i] = order[i];
+			int prev = i == 0 ? -1 : order[i - 1];
+			boolean sameLine = prev != -1 && this.horizontal[prev] == this.horizontal[order[i]]
+					&& this.lines[prev] == this.lines[order[i]];
+			previous[i] = sameLine ? prev : -1;
+		}
+		return placeGoal(placement, previous, 0, 0L, new byte[count], goals, limit);
+	}
+
+	/** (Private)
+	 * recursively place the blocks of an end state
+	 * @param placement the blocks in placing order
+	 * @param previous the block before each one on the same line, or -1
+	 * @param i the number of blocks placed so far
+	 * @param occupancy the cells covered by the placed blocks
+	 * @param offsets the offsets of the placed blocks
+	 * @param goals the table to add the end states to
+	 * @param limit the largest number of end states wanted
+	 * @return false if there are more than limit end states
+	 */
+	private boolean placeGoal(int[] placement, int[] previous, int i, long occupancy, byte[] offsets,
+							  StateTable goals, int limit) {
+		if (i == placement.length) {
+			goals.add(packLow(offsets), packHigh(offsets));
+			return goals.size() <= limit;
+		}
+		int b = placement[i];
+		int min = previous[i] == -1 ? 0 : offsets[previous[i]] + this.sizes[previous[i]];
+		if (b == this.goalBlock) min = Math.max(min, getMaxOffset(b));
+		for (int offset = min; offset <= getMaxOffset(b); offset++) {
+			if ((occupancy & this.masks[b][offset]) != 0) continue;
+			offsets[b] = (byte) offset;
+			if (!placeGoal(placement, previous, i + 1, occupancy | this.masks[b][offset], offsets, goals, limit)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * build a Block at a given offset, e.g. to hand a solver move back to the game
+	 * @param block the index of the block
+	 * @param offset the offset of the block
+	 * @return a new Block with its positions filled in
+	 */
+	Block toBlock(int block, int offset) {
+		int row = this.horizontal[block] ? this.lines[block] : offset;
+		int col = this.horizontal[block] ? offset : this.lines[block];
+		Block newBlock = new Block(this.ids[block], row, col);
+		for (int i = 1; i < this.sizes[block]; i++) {
+			newBlock.addPosition(this.horizontal[block]
+					? new Integer[] {row, col + i}
+					: new Integer[] {row + i, col});
+		}
+		return newBlock;
+	}
+
+	/**
+	 * turn a sequence of board states into the moves between them
+	 * @param states the offsets of consecutive board states, one slide apart
+	 * @return the blocks moved, each in its new position, in playing order
+	 */
+	ArrayList<Block> toMoves(List<byte[]> states) {
+		ArrayList<Block> moves = new ArrayList<>();
+		for (int i = 1; i < states.size(); i++) {
+			byte[] prev = states.get(i - 1);
+			byte[] curr = states.get(i);
+			for (int block = 0; block < curr.length; block++) {
+				if (curr[block] != prev[block]) moves.add(toBlock(block, curr[block]));
+			}
+		}
+		return moves;
+	}
+}
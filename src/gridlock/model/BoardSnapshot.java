@@ -0,0 +1,170 @@
+package gridlock.model;
+
+import java.util.Arrays;
+
+/**
+ * BoardSnapshot class, an immutable board state
+ * Everything that never changes during play (ids, sizes, directions, the row/col of every block)
+ * lives in one shared BoardLayout, so a snapshot is only a byte offset per block and the bitboard
+ * of the occupied cells. Moving a block gives a new snapshot and leaves this one untouched; the
+ * layout is shared by every snapshot of the puzzle.
+ */
+final class BoardSnapshot {
+	private final BoardLayout layout;
+	private final int exitRow;
+	private final byte[] offsets;
+	private final long occupancy;
+	// Zobrist hash of the offsets, updated on every move
+	private final long hash;
+
+	/** (Private)
+	 * Class constructor for BoardSnapshot
+	 * @param layout the shared layout
+	 * @param exitRow the row with the exit on its right
+	 * @param offsets the offset of every block, owned by the new snapshot
+	 * @param occupancy the occupied cells
+	 * @param hash the Zobrist hash of the offsets
+	 */
+	private BoardSnapshot(BoardLayout layout, int exitRow, byte[] offsets, long occupancy, long hash) {
+		this.layout = layout;
+		this.exitRow = exitRow;
+		this.offsets = offsets;
+		this.occupancy = occupancy;
+		this.hash = hash;
+	}
+
+	/**
+	 * take a snapshot of a game-board with its own new layout
+	 * @param board the game-board
+	 * @return the snapshot of the current board state
+	 */
+	static BoardSnapshot of(GameBoard board) {
+		return of(new BoardLayout(board.getBlocks(), board.getGridSize()), board);
+	}
+
+	/**
+	 * take a snapshot of a game-board sharing an existing layout
+	 * @param layout a layout with the same blocks, on the same rows/cols, as the board
+	 * @param board the game-board
+	 * @return the snapshot of the current board state
+	 */
+	static BoardSnapshot of(BoardLayout layout, GameBoard board) {
+		byte[] offsets = new byte[layout.getBlockCount()];
+		for (int b = 0; b < offsets.length; b++) {
+			Block block = board.getBlock(layout.getID(b));
+			offsets[b] = (byte) (layout.isHorizontal(b) ? block.getCol() : block.getRow());
+		}
+		return new BoardSnapshot(layout, board.getExitRow(), offsets, layout.getOccupancy(offsets), layout.hash(offsets));
+	}
+
+	/**
+	 * get the shared layout
+	 * @return the layout of the puzzle
+	 */
+	BoardLayout getLayout() {
+		return this.layout;
+	}
+
+	/**
+	 * get the offset of a block
+	 * @param block the index of the block in the layout
+	 * @return the starting col (horizontal) or row (vertical) of the block
+	 */
+	int getOffset(int block) {
+		return this.offsets[block];
+	}
+
+	/**
+	 * get the starting row of a block
+	 * @param block the index of the block in the layout
+	 * @return the starting row of the block
+	 */
+	int getRow(int block) {
+		return this.layout.isHorizontal(block) ? this.layout.getLine(block) : this.offsets[block];
+	}
+
+	/**
+	 * get the starting col of a block
+	 * @param block the index of the block in the layout
+	 * @return the starting col of the block
+	 */
+	int getCol(int block) {
+		return this.layout.isHorizontal(block) ? this.offsets[block] : this.layout.getLine(block);
+	}
+
+	/**
+	 * get the offsets a block can slide to when only that block is moved, as GameBoard.blockRange
+	 * @param block the index of the block in the layout
+	 * @return the smallest and the largest reachable offset
+	 */
+	int[] getRange(int block) {
+		int offset = this.offsets[block];
+		long others = this.occupancy & ~this.layout.getMask(block, offset);
+		int min = offset;
+		while (min > 0 && (others & this.layout.getMask(block, min - 1)) == 0) min--;
+		int max = offset;
+		while (max < this.layout.getMaxOffset(block) && (others & this.layout.getMask(block, max + 1)) == 0) max++;
+		return new int[] {min, max};
+	}
+
+	/**
+	 * slide one block
+	 * @param block the index of the block in the layout
+	 * @param offset the new offset of the block, assumed reachable
+	 * @return a new snapshot with the block moved
+	 */
+	BoardSnapshot move(int block, int offset) {
+		int move = BoardLayout.encodeMove(block, offset - this.offsets[block]);
+		long newHash = this.layout.hashMove(this.hash, this.offsets, move);
+		byte[] newOffsets = this.offsets.clone();
+		long newOccupancy = this.layout.applyMove(newOffsets, this.occupancy, move);
+		return new BoardSnapshot(this.layout, this.exitRow, newOffsets, newOccupancy, newHash);
+	}
+
+	/**
+	 * Check if the "z" car is at the exit
+	 * @return true if the snapshot is an end board state
+	 */
+	boolean isWin() {
+		int goal = this.layout.getGoalBlock();
+		return goal != -1 && this.layout.isHorizontal(goal) && this.layout.getLine(goal) == this.exitRow
+				&& this.layout.isGoal(this.offsets);
+	}
+
+	/**
+	 * build a playable game-board of this board state
+	 * @return a new GameBoard, blocks in layout order
+	 */
+	GameBoard toGameBoard() {
+		GameBoard board = new GameBoard(this.layout.getGridSize(), this.exitRow);
+		for (int b = 0; b < this.offsets.length; b++) {
+			board.setBlock(this.layout.getID(b), getRow(b), getCol(b), this.layout.getSize(b), this.layout.isHorizontal(b));
+		}
+		return board;
+	}
+
+	/** Two snapshots of the same layout are equal iff every block has the same offset.
+	 * @param obj the object to be compared
+	 * @return true if the two snapshots are the same board state
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) return true;
+		if (!(obj instanceof BoardSnapshot)) return false;
+		BoardSnapshot s = (BoardSnapshot) obj;
+		return this.hash == s.hash && this.layout == s.layout && Arrays.equals(this.offsets, s.offsets);
+	}
+
+	/**
+	 * get the Zobrist hash of the board state, kept up to date by every move
+	 * @return the 64-bit hash
+	 */
+	long getHash() {
+		return this.hash;
+	}
+
+	@Override
+	public int hashCode() {
+		return (int) (this.hash ^ (this.hash >>> 32));
+	}
+}
@@ -1,228 +1,385 @@
 package gridlock.model;
 
 import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
 
 /**
  * the BoardSolver Class for implementing the hint functionality of the board
+ * A solver keeps its last solution: after reroot to a board state on that solution (the player
+ * followed the hint, or undid back along it) the next solvePuzzle is answered without a search.
  * added by Joseph
  */
-class BoardSolver {
-	private BoardState board;
+class BoardSolver implements Solver {
+	// more end states than this and a bidirectional search would start with a bigger frontier than it saves
+	private static final int GOAL_LIMIT = 1 << 16;
+	// smaller layers are not worth handing out to other threads
+	private static final int PARALLEL_LAYER = 1 << 10;
+	private static final int CHUNKS_PER_THREAD = 4;
+
+	private BoardLayout layout;
+	private byte[] start;
 	private int numMoves;
+	private ArrayList<Block> path;
+	private StateTable pathStates;
+	private int step;
+	private SolverBudget budget = new SolverBudget();
+	private boolean stopped;
 
 	/**
-	 * the BoardState class designed for internal back end implementation
-	 * Added by Joseph
+	 * the SearchSide class, one direction of a search
+	 * States are kept in a StateTable, so the dense state indexes double as the BFS queue;
+	 * the current layer is the index range [layerStart, layerEnd).
 	 */
-	private static class BoardState {
-		private Board board;
-		private BoardState prevBoard;
-		private Block lastMove;
-
-		/**
-		 * BoardState class constructor
-		 * @param blocks the list of blocks
-		 * @param prevBoard the list of previous board states
-		 * @param lastMove the last Block that was moved
-		 */
-		public BoardState(ArrayList<Block> blocks, BoardState prevBoard, Block lastMove) {
-			this.board = new Board();
-			this.board.setBlocks(blocks);
-			this.prevBoard = prevBoard;
-			this.lastMove = lastMove;
-			this.board.setGrid();
-		}
+	private static class SearchSide {
+		private StateTable states = new StateTable(1 << 12);
+		private int[] parents = new int[1 << 12];
+		private int[] depths = new int[1 << 12];
+		private int layerStart = 0;
+		private int layerEnd = 0;
 
 		/**
-		 * get the parent BoardState that was used to create this BoardState
-		 * @return parent BoardState
+		 * record the parent and depth of a state that was just added to the table
+		 * @param index the index of the new state
+		 * @param parent the index of its parent, -1 for a root
+		 * @param depth the number of moves from a root
 		 */
-		public BoardState getPrevBoard() {
-			return this.prevBoard;
+		private void record(int index, int parent, int depth) {
+			if (index == this.parents.length) {
+				this.parents = Arrays.copyOf(this.parents, index * 2);
+				this.depths = Arrays.copyOf(this.depths, index * 2);
+			}
+			this.parents[index] = parent;
+			this.depths[index] = depth;
 		}
 
 		/**
-		 * get the last move made
-		 * @return the last block that was moved
+		 * get the number of states in the current layer
+		 * @return the size of the frontier
 		 */
-		public Block getLastMove() {
-			return this.lastMove;
+		private int frontierSize() {
+			return this.layerEnd - this.layerStart;
 		}
+	}
 
-		/**
-		 * Print all blocks' details
-		 */
-		private void printBlocks() {
-			for (Block block: this.board.getBlocks()) {
-				System.out.println(block.toString());
-			}
-		}
+	/**
+	 * the Chunk class, the part of a BFS layer one worker expands in a parallel search
+	 * It collects the successors that are not in the table yet, in generation order,
+	 * for the calling thread to merge.
+	 */
+	private static class Chunk {
+		private long[] lows = new long[1 << 8];
+		private long[] highs = new long[1 << 8];
+		private int[] parents = new int[1 << 8];
+		private boolean[] goals = new boolean[1 << 8];
+		private int size;
+		private byte[] offsets;
+		private int[] moves;
 
 		/**
-		 * Check if the goal of the game is fulfilled
-		 * @return true if the red car is on the goal position
-		 * @return false if the red car is not on the goal position
+		 * Chunk class constructor
+		 * @param layout the geometry of the blocks
 		 */
-		public boolean checkGameOver() {
-			for (Block block: this.board.getBlocks()) {
-				if (block.getID().equals("z")) {
-					if (block.getPosition().get(0)[1] == 4) return true;
-					else return false;
-				}
-			}
-			return false;
+		private Chunk(BoardLayout layout) {
+			this.offsets = new byte[layout.getBlockCount()];
+			this.moves = new int[layout.getMoveCapacity()];
 		}
 
 		/**
-		 * get the next possible board states
-		 * @return the list of possible-to-visit board states
+		 * expand a range of a layer, only reading the table
+		 * @param layout the geometry of the blocks
+		 * @param states the states found so far
+		 * @param from the index of the first state to expand
+		 * @param to the index after the last state to expand
 		 */
-		public ArrayList<BoardState> getNextPossible() {
-			ArrayList<BoardState> next = new ArrayList<>();
-			Block changedBlock = null;
-			for (Block block : this.board.getBlocks()) {
-				Integer[] newPos = new Integer[2];
-				newPos[0] = block.getRow();
-				newPos[1] = block.getCol();
-				if (block.isHorizontal()) {
-					String[] row = this.board.getGridRow(newPos[0]);
-					if (newPos[1] > 0 && row[newPos[1] - 1].equals("*")) {
-						// go as far left as it can go
-						while (newPos[1] > 0 && row[newPos[1] - 1].equals("*")) {
-							newPos[1]--;
-							next.add(createNewBoard(block, newPos, changedBlock));
-						}
-					}
-					// go as far right as it can go
-					newPos[1] = block.getCol();
-					if (newPos[1] < 6 - block.getSize() && row[newPos[1] + block.getSize()].equals("*")) {
-						while (newPos[1] < 6 - block.getSize() && row[newPos[1] + block.getSize()].equals("*")) {
-							newPos[1]++;
-							next.add(createNewBoard(block, newPos, changedBlock));
-						}
-					}
-				} else {
-					if (newPos[0] > 0 && this.board.getGridRow(newPos[0] - 1)[newPos[1]].equals("*")) {
-						// go as far up as it can go
-						while (newPos[0] > 0 && this.board.getGridRow(newPos[0] - 1)[newPos[1]].equals("*")) {
-							newPos[0]--;
-							next.add(createNewBoard(block, newPos, changedBlock));
-						}
-					}
-					// go as far down as it can go
-					newPos[0] = block.getRow();
-					if (newPos[0] < 6 - block.getSize() && this.board.getGridRow
-							(newPos[0] + block.getSize())[newPos[1]].equals("*")) {
-						while (newPos[0] < 6 - block.getSize() && this.board.getGridRow
-								(newPos[0] + block.getSize())[newPos[1]].equals("*")) {
-							newPos[0]++;
-							next.add(createNewBoard(block, newPos, changedBlock));
+		private void expand(BoardLayout layout, StateTable states, int from, int to) {
+			this.size = 0;
+			for (int index = from; index < to; index++) {
+				long parentLow = states.getLow(index);
+				long parentHigh = states.getHigh(index);
+				layout.unpack(parentLow, parentHigh, this.offsets);
+				long occupancy = layout.getOccupancy(this.offsets);
+				int count = layout.getMoves(this.offsets, occupancy, this.moves);
+				for (int i = 0; i < count; i++) {
+					long low = layout.packLow(parentLow, this.offsets, this.moves[i]);
+					long high = layout.packHigh(parentHigh, this.offsets, this.moves[i]);
+					if (states.indexOf(low, high) == -1) {
+						if (this.size == this.lows.length) {
+							this.lows = Arrays.copyOf(this.lows, this.size * 2);
+							this.highs = Arrays.copyOf(this.highs, this.size * 2);
+							this.parents = Arrays.copyOf(this.parents, this.size * 2);
+							this.goals = Arrays.copyOf(this.goals, this.size * 2);
 						}
+						this.lows[this.size] = low;
+						this.highs[this.size] = high;
+						this.parents[this.size] = index;
+						this.goals[this.size++] = layout.reachesGoal(this.offsets, this.moves[i]);
 					}
 				}
 			}
-			return next;
 		}
+	}
 
-		/**
-		 * helper function to create a new board with one block moved into a new position
-		 * @param block the block that's moved to the new position
-		 * @param newPosition the new position [row,col] the block is moved into
-		 * @return the new Board
-		 */
-		private BoardState createNewBoard(Block block, Integer[] newPosition, Block changedBlock) {
-			ArrayList<Block> copyBlocks = new ArrayList<>();
-			for (Block blockCopy: this.board.getBlocks()) {
-				Block newBlock = blockCopy.duplicate();
-				if (newBlock.getID().equals(block.getID())) {
-					newBlock.setNewPosition(newPosition);
-					changedBlock = newBlock;
-				}
-				copyBlocks.add(newBlock);
+	/**
+	 * Class constructor for BoardSolver
+	 * @param blocks the list of blocks
+	 * @param gridSize the length of the (square) grid
+	 */
+	public BoardSolver(ArrayList<Block> blocks, int gridSize) {
+		this.layout = new BoardLayout(blocks, gridSize);
+		reroot(blocks);
+	}
+
+	@Override
+	public boolean reroot(List<Block> blocks) {
+		byte[] offsets = this.layout.getOffsets(blocks);
+		this.start = offsets;
+		if (this.pathStates != null) {
+			int index = this.pathStates.indexOf(this.layout.packLow(offsets), this.layout.packHigh(offsets));
+			if (index != -1) {
+				this.step = index;
+				this.numMoves = this.path.size() - index;
+				return true;
 			}
-			return new BoardState(copyBlocks, this, changedBlock);
 		}
+		// the player left the solution: the old search tree is rooted elsewhere, drop it
+		this.path = null;
+		this.pathStates = null;
+		return false;
+	}
+
+	@Override
+	public ArrayList<Block> solve() {
+		solvePuzzle();
+		return getPath();
+	}
+
+	@Override
+	public Block getHint() {
+		return solvePuzzle();
+	}
 
-		@Override
-		public int hashCode() {
-			int result = ((this.board.getBlocks() == null) ? 0 : this.board.getBlocks().hashCode());
-			return result;
+	@Override
+	public int getDistance() {
+		solvePuzzle();
+		return this.path == null ? -1 : this.numMoves;
+	}
+
+	@Override
+	public void setBudget(SolverBudget budget) {
+		this.budget = budget;
+	}
+
+	@Override
+	public boolean isStopped() {
+		return this.stopped;
+	}
+
+	/**
+	 * bfs to get the end state of the board
+	 * @return the block that is to be moved next to reach
+	 * the end board state with least number of moves
+	 */
+	public Block solvePuzzle() {
+		if (this.path != null) {
+			return this.step < this.path.size() ? this.path.get(this.step) : null;
 		}
+		this.stopped = false;
+		return searchBreadthFirst();
+	}
 
-		@Override
-		public boolean equals (Object obj) {
-			if (this == obj)
-				return true;
-			if (obj == null)
-				return false;
-			if (getClass() != obj.getClass())
-				return false;
-			BoardState other = (BoardState) obj;
-			if (this.board.getBlocks() == null) {
-				if (other.board.getBlocks() != null)
-					return false;
+	/** (Private)
+	 * plain bfs from the current board state. Successors are generated as packed moves made and
+	 * taken back in place on one scratch state, only states that are new get stored (packed)
+	 * @return the block that is to be moved next
+	 */
+	private Block searchBreadthFirst() {
+		SearchSide side = new SearchSide();
+		side.record(side.states.add(this.layout.packLow(this.start), this.layout.packHigh(this.start)), -1, 0);
+		byte[] offsets = new byte[this.start.length];
+		int[] moves = new int[this.layout.getMoveCapacity()];
+		// the dense indexes of the table are the BFS queue
+		for (int index = 0; index < side.states.size(); index++) {
+			long low = side.states.getLow(index);
+			long high = side.states.getHigh(index);
+			this.layout.unpack(low, high, offsets);
+			if (this.layout.isGoal(offsets)) {
+				keepSolution(joinPaths(side, index, null, -1));
+				return this.path.isEmpty() ? null : this.path.get(0);
 			}
-			else {
-				for (Block block : this.board.getBlocks()) {
-					if (!other.board.getBlocks().contains(block)) return false;
-				}
+			if (!this.budget.spend(1)) {
+				this.stopped = true;
+				return null;
+			}
+			long occupancy = this.layout.getOccupancy(offsets);
+			int count = this.layout.getMoves(offsets, occupancy, moves);
+			for (int i = 0; i < count; i++) {
+				int added = side.states.add(this.layout.packLow(low, offsets, moves[i]),
+						this.layout.packHigh(high, offsets, moves[i]));
+				if (added >= 0) side.record(added, index, side.depths[index] + 1);
 			}
-			return true;
-		}
-
-		@Override
-		public String toString() {
-			printBlocks();
-			return this.getClass().getName();
 		}
+		return null;
 	}
 
 	/**
-	 * Class constructor for BoardSolver
-	 * @param blocks  blocks the list of blocks
-	 * @param prevBoard the list of previous board states
-	 * @param lastMove the last Block that was moved
+	 * level-synchronous bfs that expands every large layer in chunks on all cores
+	 * Workers only read the table while they expand; their chunks are merged in order on the
+	 * calling thread, so the table and the solution are exactly those of the plain bfs.
+	 * @return the block that is to be moved next to reach
+	 * the end board state with least number of moves
 	 */
-	public BoardSolver(ArrayList<Block> blocks, BoardState prevBoard, Block lastMove) {
-		BoardState board = new BoardState(blocks, prevBoard, lastMove);
-		this.board = board;
+	public Block solvePuzzleParallel() {
+		if (this.path != null) {
+			return this.step < this.path.size() ? this.path.get(this.step) : null;
+		}
+		this.stopped = false;
+		if (this.layout.isGoal(this.start)) {
+			keepSolution(new ArrayList<>(Arrays.asList(this.start)));
+			return null;
+		}
+		SearchSide side = new SearchSide();
+		side.record(side.states.add(this.layout.packLow(this.start), this.layout.packHigh(this.start)), -1, 0);
+		side.layerEnd = 1;
+		Chunk[] chunks = new Chunk[Runtime.getRuntime().availableProcessors() * CHUNKS_PER_THREAD];
+		for (int c = 0; c < chunks.length; c++) chunks[c] = new Chunk(this.layout);
+		while (side.frontierSize() > 0) {
+			final int from = side.layerStart;
+			final int size = side.frontierSize();
+			final int used = size < PARALLEL_LAYER ? 1 : chunks.length;
+			if (!this.budget.spend(size)) {
+				this.stopped = true;
+				return null;
+			}
+			if (used == 1) chunks[0].expand(this.layout, side.states, from, from + size);
+			else IntStream.range(0, used).parallel().forEach(c -> chunks[c].expand(this.layout, side.states,
+					from + (int) ((long) size * c / used), from + (int) ((long) size * (c + 1) / used)));
+			// merged in order, the first new end state is the one the plain bfs would reach first
+			for (int c = 0; c < used; c++) {
+				Chunk chunk = chunks[c];
+				for (int i = 0; i < chunk.size; i++) {
+					int added = side.states.add(chunk.lows[i], chunk.highs[i]);
+					if (added < 0) continue;
+					side.record(added, chunk.parents[i], side.depths[chunk.parents[i]] + 1);
+					if (chunk.goals[i]) {
+						keepSolution(joinPaths(side, added, null, -1));
+						return this.path.get(0);
+					}
+				}
+			}
+			side.layerStart = side.layerEnd;
+			side.layerEnd = side.states.size();
+		}
+		return null;
 	}
 
 	/**
-	 * bfs to get the end state of the board
+	 * bidirectional bfs: expands from the current board and from every possible end board at
+	 * the same time, always growing the smaller frontier by a whole layer, until they meet
+	 * Falls back to plain bfs when there are too many end boards for this to pay off.
 	 * @return the block that is to be moved next to reach
 	 * the end board state with least number of moves
 	 */
-	public Block solvePuzzle() {
-		LinkedList<BoardState> queue = new LinkedList<>();
-		HashSet<BoardState> visited = new HashSet<>();
-
-		queue.add(this.board);
-		while (!queue.isEmpty()) {
-			BoardState curr = queue.poll();
-			if (curr.checkGameOver()) {
-				ArrayList<BoardState> path = new ArrayList<>();
-				while (curr != null) {
-					path.add(curr);
-					curr = curr.getPrevBoard();
+	public Block solvePuzzleBidirectional() {
+		if (this.path != null) {
+			return this.step < this.path.size() ? this.path.get(this.step) : null;
+		}
+		this.stopped = false;
+		byte[] start = this.start;
+		SearchSide forward = new SearchSide();
+		forward.record(forward.states.add(this.layout.packLow(start), this.layout.packHigh(start)), -1, 0);
+		forward.layerEnd = 1;
+		SearchSide backward = new SearchSide();
+		if (!this.layout.addGoalStates(start, backward.states, GOAL_LIMIT)) return searchBreadthFirst();
+		for (int index = 0; index < backward.states.size(); index++) backward.record(index, -1, 0);
+		backward.layerEnd = backward.states.size();
+
+		int meeting = backward.states.indexOf(this.layout.packLow(start), this.layout.packHigh(start));
+		if (meeting != -1) {
+			keepSolution(joinPaths(forward, 0, backward, meeting));
+			return null;
+		}
+		byte[] offsets = new byte[start.length];
+		int[] moves = new int[this.layout.getMoveCapacity()];
+		while (forward.frontierSize() > 0 && backward.frontierSize() > 0) {
+			boolean fromStart = forward.frontierSize() <= backward.frontierSize();
+			SearchSide side = fromStart ? forward : backward;
+			SearchSide other = fromStart ? backward : forward;
+			int bestIndex = -1;
+			int bestOther = -1;
+			for (int index = side.layerStart; index < side.layerEnd; index++) {
+				if (!this.budget.spend(1)) {
+					this.stopped = true;
+					return null;
+				}
+				long parentLow = side.states.getLow(index);
+				long parentHigh = side.states.getHigh(index);
+				this.layout.unpack(parentLow, parentHigh, offsets);
+				long occupancy = this.layout.getOccupancy(offsets);
+				int count = this.layout.getMoves(offsets, occupancy, moves);
+				for (int i = 0; i < count; i++) {
+					long low = this.layout.packLow(parentLow, offsets, moves[i]);
+					long high = this.layout.packHigh(parentHigh, offsets, moves[i]);
+					int added = side.states.add(low, high);
+					if (added < 0) continue;
+					side.record(added, index, side.depths[index] + 1);
+					// every state on this layer has the same depth, keep the shallowest match on the other side
+					int match = other.states.indexOf(low, high);
+					if (match != -1 && (bestOther == -1 || other.depths[match] < other.depths[bestOther])) {
+						bestIndex = added;
+						bestOther = match;
+					}
 				}
-				BoardState nextBoard = path.get(path.size() - 2);
-				numMoves = path.size() - 1;
-				return nextBoard.getLastMove();
 			}
-			if (visited.contains(curr)) continue;
-
-			visited.add(curr);
-
-			for (BoardState boards : curr.getNextPossible()) {
-				queue.add(boards);
+			if (bestIndex != -1) {
+				keepSolution(fromStart ? joinPaths(forward, bestIndex, backward, bestOther)
+						: joinPaths(forward, bestOther, backward, bestIndex));
+				return this.path.get(0);
 			}
+			side.layerStart = side.layerEnd;
+			side.layerEnd = side.states.size();
 		}
 		return null;
 	}
 
+	/** (Private)
+	 * join the two halves of a bidirectional search at the state where they met
+	 * @param forward the search from the current board
+	 * @param forwardIndex the meeting state in the forward search
+	 * @param backward the search from the end boards, null for a one-way search
+	 * @param backwardIndex the same state in the backward search
+	 * @return the board states from the current board to an end board
+	 */
+	private ArrayList<byte[]> joinPaths(SearchSide forward, int forwardIndex, SearchSide backward, int backwardIndex) {
+		ArrayList<byte[]> states = new ArrayList<>();
+		for (int index = forwardIndex; index != -1; index = forward.parents[index]) {
+			byte[] offsets = new byte[this.start.length];
+			this.layout.unpack(forward.states.getLow(index), forward.states.getHigh(index), offsets);
+			states.add(0, offsets);
+		}
+		if (backward == null) return states;
+		for (int index = backward.parents[backwardIndex]; index != -1; index = backward.parents[index]) {
+			byte[] offsets = new byte[this.start.length];
+			this.layout.unpack(backward.states.getLow(index), backward.states.getHigh(index), offsets);
+			states.add(offsets);
+		}
+		return states;
+	}
+
+	/** (Private)
+	 * keep the moves and board states from the root to a goal state
+	 * @param states the offsets of every board state on the solution, from the root
+	 */
+	private void keepSolution(ArrayList<byte[]> states) {
+		this.path = this.layout.toMoves(states);
+		this.pathStates = new StateTable(states.size());
+		// index i of pathStates is the state after i moves
+		for (byte[] curr : states) this.pathStates.add(this.layout.packLow(curr), this.layout.packHigh(curr));
+		this.step = 0;
+		this.numMoves = this.path.size();
+	}
+
 	/**
 	 * get the number of moves from the current board state to
 	 * the the end board state
@@ -232,4 +389,12 @@ class BoardSolver {
 		return numMoves;
 	}
 
-}
\ No newline at end of file
+	/**
+	 * get every move left on the last solution found by solvePuzzle
+	 * @return the blocks moved, each in its new position, in playing order
+	 */
+	public ArrayList<Block> getPath() {
+		return this.path == null ? null : new ArrayList<>(this.path.subList(this.step, this.path.size()));
+	}
+
+}
@@ -0,0 +1,160 @@
+package gridlock.model;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * DistanceMap class, the distance to the goal of every board state reachable from a starting board
+ * It is built once per level: a forward BFS collects the whole connected component of the start
+ * (slides are reversible, so this is every state the player can ever reach), then a backward BFS
+ * from all goal states in it labels every state with its distance. After that any hint, whatever
+ * moves, undos, redos or resets happened, is a scan of the current state's neighbours.
+ * Building the map spends a SolverBudget; a map whose budget ran out is not complete and has no distances.
+ */
+final class DistanceMap {
+	private static final short UNSOLVABLE = -1;
+
+	private final BoardLayout layout;
+	private final StateTable states;
+	private final short[] distances;
+
+	/**
+	 * Class constructor for DistanceMap, explores the whole component of the board
+	 * @param blocks the blocks of the starting board
+	 * @param gridSize the length of the (square) grid
+	 * @param budget the budget of the search, spent once per state in each BFS
+	 */
+	DistanceMap(List<Block> blocks, int gridSize, SolverBudget budget) {
+		this.layout = new BoardLayout(blocks, gridSize);
+		this.states = new StateTable(1 << 12);
+		byte[] offsets = this.layout.getOffsets(blocks);
+		this.states.add(this.layout.packLow(offsets), this.layout.packHigh(offsets));
+
+		// forward BFS: the dense indexes of the table are the BFS queue
+		int[] goals = new int[16];
+		int numGoals = 0;
+		int[] moves = new int[this.layout.getMoveCapacity()];
+		for (int index = 0; index < this.states.size(); index++) {
+			if (!budget.spend(1)) {
+				this.distances = null;
+				return;
+			}
+			long low = this.states.getLow(index);
+			long high = this.states.getHigh(index);
+			this.layout.unpack(low, high, offsets);
+			if (this.layout.isGoal(offsets)) {
+				if (numGoals == goals.length) goals = Arrays.copyOf(goals, numGoals * 2);
+				goals[numGoals++] = index;
+			}
+			long occupancy = this.layout.getOccupancy(offsets);
+			int count = this.layout.getMoves(offsets, occupancy, moves);
+			for (int i = 0; i < count; i++) {
+				this.states.add(this.layout.packLow(low, offsets, moves[i]), this.layout.packHigh(high, offsets, moves[i]));
+			}
+		}
+
+		// backward BFS from every goal state at once
+		short[] distances = new short[this.states.size()];
+		Arrays.fill(distances, UNSOLVABLE);
+		int[] queue = new int[this.states.size()];
+		int[] buffer = new int[this.layout.getMoveCapacity() + 1];
+		int head = 0;
+		int tail = 0;
+		for (int i = 0; i < numGoals; i++) {
+			distances[goals[i]] = 0;
+			queue[tail++] = goals[i];
+		}
+		while (head < tail) {
+			if (!budget.spend(1)) {
+				this.distances = null;
+				return;
+			}
+			int index = queue[head++];
+			buffer = neighbours(index, offsets, buffer);
+			for (int i = 1; i <= buffer[0]; i++) {
+				int neighbour = buffer[i];
+				if (distances[neighbour] == UNSOLVABLE) {
+					distances[neighbour] = (short) (distances[index] + 1);
+					queue[tail++] = neighbour;
+				}
+			}
+		}
+		this.distances = distances;
+	}
+
+	/**
+	 * check if the map was built in full, i.e. its budget did not run out
+	 * @return true if every state of the component has its distance
+	 */
+	boolean isComplete() {
+		return this.distances != null;
+	}
+
+	/**
+	 * get the number of moves from a board state to the end board state
+	 * @param blocks the blocks of the board, in the same order as the starting board
+	 * @return the distance, or -1 if the state is not in the component or cannot be solved
+	 */
+	int getDistance(List<Block> blocks) {
+		int index = indexOf(blocks);
+		return index == -1 ? UNSOLVABLE : this.distances[index];
+	}
+
+	/**
+	 * get the next block to move from a board state
+	 * @param blocks the blocks of the board, in the same order as the starting board
+	 * @return the block to move in its new position, null if there is no such move
+	 */
+	Block getHint(List<Block> blocks) {
+		int index = indexOf(blocks);
+		if (index == -1 || this.distances[index] <= 0) return null;
+		byte[] offsets = new byte[blocks.size()];
+		byte[] next = new byte[blocks.size()];
+		this.layout.unpack(this.states.getLow(index), this.states.getHigh(index), offsets);
+		int[] buffer = neighbours(index, next, new int[this.layout.getMoveCapacity() + 1]);
+		for (int i = 1; i <= buffer[0]; i++) {
+			int neighbour = buffer[i];
+			if (this.distances[neighbour] == this.distances[index] - 1) {
+				this.layout.unpack(this.states.getLow(neighbour), this.states.getHigh(neighbour), next);
+				for (int block = 0; block < offsets.length; block++) {
+					if (offsets[block] != next[block]) return this.layout.toBlock(block, next[block]);
+				}
+			}
+		}
+		return null;
+	}
+
+	/** (Private)
+	 * find the index of a board state
+	 * @param blocks the blocks of the board
+	 * @return the index of the state, -1 if it is not in the component
+	 */
+	private int indexOf(List<Block> blocks) {
+		if (blocks.size() != this.layout.getBlockCount()) return -1;
+		byte[] offsets = this.layout.getOffsets(blocks);
+		return this.states.indexOf(this.layout.packLow(offsets), this.layout.packHigh(offsets));
+	}
+
+	/** (Private)
+	 * list the indexes of the states one slide away from a state
+	 * @param index the index of the state
+	 * @param offsets scratch array for the offsets
+	 * @param result array for the result, getMoveCapacity() + 1 long
+	 * @return the number of neighbours in [0], followed by their indexes
+	 */
+	private int[] neighbours(int index, byte[] offsets, int[] result) {
+		long low = this.states.getLow(index);
+		long high = this.states.getHigh(index);
+		this.layout.unpack(low, high, offsets);
+		long occupancy = this.layout.getOccupancy(offsets);
+		// the moves are written from [1] and replaced in place by the states they lead to
+		int count = this.layout.getMoves(offsets, occupancy, result);
+		for (int i = count; i > 0; i--) result[i] = result[i - 1];
+		for (int i = 1; i <= count; i++) {
+			int move = result[i];
+			result[i] = this.states.indexOf(this.layout.packLow(low, offsets, move), this.layout.packHigh(high, offsets, move));
+		}
+		result[0] = count;
+		return result;
+	}
+}
@@ -15,18 +15,48 @@ import java.util.*;
  * Added by Alina, edited by Edwin, Joseph and James
  */
 public class GameBoard {
+	// ids of one character below this are found through blockIndex, any other id by a scan
+	private static final int INDEXED_IDS = 128;
+
 	private Board board;
+	private int[] blockIndex;
+	// occupied cells: bit col of rowMasks[row], and bit row of colMasks[col]
+	private int[] rowMasks;
+	private int[] colMasks;
 	private ArrayList<Block> prevLocations;
 	private ArrayList<Block> nextLocations;
 	private int minMoves;
 	private BooleanProperty gameState;
 	private IntegerProperty numMoves;
+	private volatile DistanceMap distanceMap;
+	// true once a precomputeHints ran out of budget: the puzzle is too big to map
+	private boolean unmappable;
+	private Solver solver;
+	private ArrayList<Move> solution;
+	private int solutionStep;
+	// layoutVersion is bumped when the blocks change, stateVersion also on every move
+	private int layoutVersion;
+	private int stateVersion;
 
 	/**
 	 * Class constructor for GameBoard
 	 */
 	public GameBoard() {
-		this.board = new Board();
+		this(Board.DEFAULT_SIZE, Board.DEFAULT_EXIT_ROW);
+	}
+
+	/**
+	 * Class constructor for GameBoard
+	 *
+	 * @param size    the length of the grid (square)
+	 * @param exitRow the row with the exit on its right
+	 */
+	public GameBoard(int size, int exitRow) {
+		this.board = new Board(size, exitRow);
+		this.blockIndex = new int[INDEXED_IDS];
+		Arrays.fill(this.blockIndex, -1);
+		this.rowMasks = new int[size];
+		this.colMasks = new int[size];
 		this.prevLocations = new ArrayList<>();
 		this.nextLocations = new ArrayList<>();
 		this.gameState = new SimpleBooleanProperty(false);
@@ -39,27 +69,56 @@ public class GameBoard {
 	 * @param fileName the file name to be processed
 	 */
 	public void process(String fileName) {
+		if (read(fileName)) setMinMoves();
+	}
+
+	/**
+	 * read the blocks of an input txt file, without solving it
+	 * The file is a square of cells (any size the solver supports), the exit is on the row of the "z" car.
+	 *
+	 * @param fileName the file name to be read
+	 * @return false if the file could not be read
+	 */
+	boolean read(String fileName) {
 		Scanner sc = null;
 		try {
 			sc = new Scanner(new File(fileName));
-			for (int row = 0; row < 6; row++) {
-				for (int col = 0; col < 6; col++) {
-					String id = sc.next();
+			ArrayList<String> cells = new ArrayList<>();
+			while (sc.hasNext()) cells.add(sc.next());
+			int size = (int) Math.round(Math.sqrt(cells.size()));
+			if (size * size != cells.size()) {
+				System.out.println(fileName + " is not a square grid");
+				return false;
+			}
+			if (size > BoardLayout.MAX_GRID_SIZE) {
+				System.out.println(fileName + " is larger than " + BoardLayout.MAX_GRID_SIZE + "x" + BoardLayout.MAX_GRID_SIZE
+						+ ", the largest grid the solver supports");
+				return false;
+			}
+			int exit = cells.indexOf("z");
+			this.board = new Board(size, exit == -1 ? (size - 1) / 2 : exit / size);
+			Arrays.fill(this.blockIndex, -1);
+			this.rowMasks = new int[size];
+			this.colMasks = new int[size];
+			for (int row = 0; row < size; row++) {
+				for (int col = 0; col < size; col++) {
+					String id = cells.get(row * size + col);
 					if (!id.equals("*")) {
 						int blockID = blockExist(id);
 						if (blockID != -1) {
 							incrementSize(blockID, row, col);
-							this.board.getGridRow(row)[col] = id;
+							setCell(row, col, blockID);
 						} else setBlock(id, row, col);
 					}
 				}
 			}
+			return true;
 		} catch (FileNotFoundException e) {
 			System.out.println(e.getMessage());
+			return false;
 		} finally {
 			if (sc != null) sc.close();
 		}
-		setMinMoves();
 	}
 
 	/**
@@ -69,26 +128,67 @@ public class GameBoard {
 	 * @return the block with the specified id
 	 */
 	public Block getBlock(String id) {
-		for (Block block : this.board.getBlocks()) {
-			if (block.getID().equals(id)) return block;
-		}
-		return null;
+		int idx = blockExist(id);
+		return idx == -1 ? null : this.board.getBlock(idx);
+	}
+
+	/**
+	 * get the underlying board
+	 *
+	 * @return the board
+	 */
+	Board getBoard() {
+		return this.board;
 	}
 
 	/**
 	 * get the grid
+	 *
+	 * @return a copy of the grid as block ids, "*" for an empty cell
 	 */
 	public ArrayList<String[]> getGrid() {
 		return this.board.getGrid();
 	}
 
+	/**
+	 * check if a cell of the grid is empty
+	 *
+	 * @param row the row of the cell
+	 * @param col the col of the cell
+	 * @return true if nothing covers the cell
+	 */
+	boolean isEmptyCell(int row, int col) {
+		return this.board.isEmpty(row, col);
+	}
+
+	/**
+	 * mark an empty cell as taken without a block (or free it again), so setBlock keeps off it
+	 * The cell stays out of the occupancy masks, moves are not stopped by it.
+	 *
+	 * @param row     the row of the cell
+	 * @param col     the col of the cell
+	 * @param blocked true to take the cell, false to free it
+	 */
+	void setBlockedCell(int row, int col, boolean blocked) {
+		this.board.setCell(row, col, blocked ? Board.BLOCKED : Board.EMPTY);
+	}
+
 	/**
 	 * get the size of the grid
 	 *
 	 * @return grid.size()
 	 */
 	public int getGridSize() {
-		return this.board.getGrid().size();
+		return this.board.getSize();
+	}
+
+	/**
+	 * get the row of the exit
+	 *
+	 * @return the row with the exit on its right
+	 */
+	public int getExitRow() {
+		return this.board.getExitRow();
 	}
 
 	/**
@@ -109,20 +209,221 @@ public class GameBoard {
 		return this.minMoves;
 	}
 
+	/**
+	 * set the min moves of the puzzle when they are already known, e.g. stored with it, instead of solving it
+	 *
+	 * @param minMoves the min moves, as getMinMoves
+	 */
+	void setMinMoves(int minMoves) {
+		this.minMoves = minMoves;
+	}
+
 	/**
 	 * get hint of the next block to move
 	 *
 	 * @return the next block to be moved to finish the puzzle
 	 */
 	public Block getHint(boolean getMinMoves) {
-		BoardSolver solver = new BoardSolver(this.board.getBlocks(), null, null);
-		Block changedBlock = solver.solvePuzzle();
+		return getHint(getMinMoves, new SolverBudget());
+	}
+
+	/**
+	 * get hint of the next block to move, giving up when the solver runs out of budget
+	 *
+	 * @param getMinMoves true to also update the min moves
+	 * @param budget      the budget (and cancellation token) for the search, if one is needed
+	 * @return the next block to be moved to finish the puzzle, null if the puzzle is finished,
+	 * cannot be solved or the search was stopped (the min moves are then left as they were)
+	 */
+	public Block getHint(boolean getMinMoves, SolverBudget budget) {
+		// the search runs on a copy, so moves are never kept waiting for it
+		GameBoard snapshot = snapshot();
+		// after precomputeHints every reachable board state already has its distance
+		DistanceMap map = snapshot.distanceMap;
+		if (map != null) {
+			int distance = map.getDistance(snapshot.getBlocks());
+			if (distance != -1) {
+				if (getMinMoves) {
+					this.minMoves = distance - 1;
+				}
+				return map.getHint(snapshot.getBlocks());
+			}
+		}
+		// follow the last solution while the player keeps to it
+		if (snapshot.solution == null) {
+			// CAMPAIGN boards on their optimal line are already solved
+			SolutionDatabase database = SolutionDatabase.getInstance();
+			int numMoves = database.getNumMoves(snapshot.board);
+			if (numMoves != -1) {
+				if (getMinMoves) {
+					this.minMoves = numMoves - 1;
+				}
+				return database.getHint(snapshot.board);
+			}
+		}
+		ArrayList<Move> moves = search(snapshot, budget);
+		if (moves == null && snapshot.solver.isStopped()) return null;
 		if (getMinMoves) {
-			this.minMoves = solver.getNumMoves() - 1;
+			this.minMoves = (moves == null ? -1 : moves.size()) - 1;
 		}
+		if (moves == null || moves.isEmpty()) return null;
+		Block changedBlock = snapshot.getBlock(moves.get(0).getID()).duplicate();
+		changedBlock.setNewPosition(moves.get(0).getTo());
 		return changedBlock;
 	}
 
+	/**
+	 * get every move of an optimal solution from the current board state
+	 * The solution comes from a single search and is kept until a move leaves it,
+	 * so playing it back or giving several hints in a row never searches again.
+	 *
+	 * @return the moves in playing order, empty if the puzzle is finished, null if it cannot be solved
+	 */
+	public ArrayList<Move> getSolution() {
+		return getSolution(new SolverBudget());
+	}
+
+	/**
+	 * get every move of an optimal solution from the current board state, giving up when the
+	 * solver runs out of budget
+	 *
+	 * @param budget the budget (and cancellation token) for the search, if one is needed
+	 * @return the moves in playing order, empty if the puzzle is finished,
+	 * null if it cannot be solved or the search was stopped
+	 */
+	public ArrayList<Move> getSolution(SolverBudget budget) {
+		return search(snapshot(), budget);
+	}
+
+	/** (Private)
+	 * copy the board and its cached solution, for a search that must not hold the lock
+	 *
+	 * @return a copy of the board, only ever used by the calling thread
+	 */
+	private synchronized GameBoard snapshot() {
+		GameBoard snapshot = duplicateBoard();
+		snapshot.solution = this.solution;
+		snapshot.solutionStep = this.solutionStep;
+		snapshot.layoutVersion = this.layoutVersion;
+		snapshot.stateVersion = this.stateVersion;
+		return snapshot;
+	}
+
+	/** (Private)
+	 * solve a snapshot of the board, then keep its solution if the board has not moved since
+	 *
+	 * @param snapshot the copy to search on
+	 * @param budget   the budget (and cancellation token) for the search, if one is needed
+	 * @return the moves from the board state of the snapshot, as searchSolution
+	 */
+	private ArrayList<Move> search(GameBoard snapshot, SolverBudget budget) {
+		synchronized (this) {
+			// the solver is taken rather than shared, so no other search reroots it meanwhile
+			if (snapshot.layoutVersion == this.layoutVersion) {
+				snapshot.solver = this.solver;
+				this.solver = null;
+			}
+		}
+		ArrayList<Move> moves = snapshot.searchSolution(budget);
+		synchronized (this) {
+			if (snapshot.layoutVersion != this.layoutVersion) return moves;
+			if (this.solver == null) this.solver = snapshot.solver;
+			if (snapshot.stateVersion == this.stateVersion && this.solution == null) {
+				this.solution = snapshot.solution;
+				this.solutionStep = snapshot.solutionStep;
+			}
+		}
+		return moves;
+	}
+
+	/** (Private)
+	 * get the moves of the solution of this board, searching for one if there is none yet
+	 *
+	 * @param budget the budget (and cancellation token) for the search, if one is needed
+	 * @return the moves in playing order, empty if the puzzle is finished,
+	 * null if it cannot be solved or the search was stopped
+	 */
+	private ArrayList<Move> searchSolution(SolverBudget budget) {
+		if (this.solution == null) {
+			if (this.solver == null) this.solver = SolverSelector.select(this.board.getBlocks(), getGridSize());
+			else this.solver.reroot(this.board.getBlocks());
+			this.solver.setBudget(budget);
+			ArrayList<Block> path = this.solver.solve();
+			if (path == null) return null;
+			HashMap<String, Integer[]> starts = new HashMap<>();
+			for (Block block : this.board.getBlocks()) starts.put(block.getID(), block.getPosition().get(0));
+			this.solution = new ArrayList<>();
+			for (Block block : path) {
+				Integer[] to = block.getPosition().get(0);
+				this.solution.add(new Move(block.getID(), starts.put(block.getID(), to), to));
+			}
+			this.solutionStep = 0;
+		}
+		return new ArrayList<>(this.solution.subList(this.solutionStep, this.solution.size()));
+	}
+
+	/** (Private)
+	 * keep the cached solution in step with a move made on the board, or drop it if the move leaves it
+	 *
+	 * @param id   the id of the block moved
+	 * @param from the starting position before the move
+	 * @param to   the starting position after the move
+	 */
+	private synchronized void followSolution(String id, Integer[] from, Integer[] to) {
+		if (this.solution == null) return;
+		if (this.solutionStep < this.solution.size() && this.solution.get(this.solutionStep).matches(id, from, to)) {
+			this.solutionStep++;
+		} else if (this.solutionStep > 0 && this.solution.get(this.solutionStep - 1).matches(id, to, from)) {
+			// undone back along the solution
+			this.solutionStep--;
+		} else {
+			this.solution = null;
+		}
+	}
+
+	/**
+	 * explore every board state reachable from the current one in a single search, so that
+	 * every later hint (after any move, undo, redo or restart) is a lookup instead of a solve
+	 */
+	public void precomputeHints() {
+		precomputeHints(new SolverBudget());
+	}
+
+	/**
+	 * explore every board state reachable from the current one, within a budget
+	 * A search stopped by the budget keeps nothing. If it was cancelled the next call starts over,
+	 * if it ran out of time or nodes the puzzle is too big to map and later calls return at once.
+	 * The board is not locked while it searches, so moves never wait for it.
+	 * @param budget the budget of the search
+	 */
+	public void precomputeHints(SolverBudget budget) {
+		ArrayList<Block> blocks;
+		int version;
+		synchronized (this) {
+			if (this.distanceMap != null || this.unmappable) return;
+			blocks = duplicateBoard().getBlocks();
+			version = this.layoutVersion;
+		}
+		DistanceMap map = new DistanceMap(blocks, getGridSize(), budget);
+		synchronized (this) {
+			if (version != this.layoutVersion) return;
+			if (map.isComplete()) this.distanceMap = map;
+			else if (!budget.isCancelled()) this.unmappable = true;
+		}
+	}
+
+	/** (Private)
+	 * forget every solution and the distance map, the blocks of the board changed
+	 */
+	private synchronized void resetSolver() {
+		this.solver = null;
+		this.solution = null;
+		this.distanceMap = null;
+		this.unmappable = false;
+		this.layoutVersion++;
+		this.stateVersion++;
+	}
+
 	/**
 	 * set the min moves required to finish the current puzzle
 	 */
@@ -138,8 +439,10 @@ public class GameBoard {
 	 * @param col the col position of the block
 	 */
 	public void setBlock(String idx, int row, int col) {
+		resetSolver();
 		Block newBlock = new Block(idx, row, col);
-		this.board.getGridRow(row)[col] = idx;
+		setCell(row, col, this.board.getBlocks().size());
+		if (isIndexed(idx)) this.blockIndex[idx.charAt(0)] = this.board.getBlocks().size();
 		this.board.getBlocks().add(newBlock);
 	}
 
@@ -156,27 +459,25 @@ public class GameBoard {
 	 */
 	public boolean setBlock(String id, int row, int col, int size, boolean isHorizontal) {
 		if (blockExist(id) != -1
-				|| (isHorizontal ? col + size > 6 : row + size > 6)
+				|| (isHorizontal ? col + size > getGridSize() : row + size > getGridSize())
 				|| row < 0 || col < 0
-				|| !this.board.getGridRow(row)[col].equals("*")) return false;
+				|| !this.board.isEmpty(row, col)) return false;
 		// put scenario: check if the grid unit is empty
 		setBlock(id, row, col);
 		int idx = blockExist(id);
 		Block b = this.board.getBlock(idx);
 		if (isHorizontal) {
 			for (int i = 1; i < size; i++) {
-				if (!this.board.getGridRow(row)[col + i].equals("*")) {
-					clearBlockFromGrid(b);
-					this.board.getBlocks().remove(b);
+				if (!this.board.isEmpty(row, col + i)) {
+					removeLastBlock(b);
 					return false;
 				}
 				incrementSize(idx, row, col + i);
 			}
 		} else {
 			for (int i = 1; i < size; i++) {
-				if (!this.board.getGridRow(row + i)[col].equals("*")) {
-					clearBlockFromGrid(b);
-					this.board.getBlocks().remove(b);
+				if (!this.board.isEmpty(row + i, col)) {
+					removeLastBlock(b);
 					return false;
 				}
 				incrementSize(idx, row + i, col);
@@ -194,12 +495,13 @@ public class GameBoard {
 	 * @post the block's size will increase by 1
 	 */
 	public void incrementSize(int id, int row, int col) {
+		resetSolver();
 		Block thisBlock = this.board.getBlock(id);
 		Integer[] newPosition = new Integer[2];
 		newPosition[0] = row;
 		newPosition[1] = col;
 		thisBlock.addPosition(newPosition);
-		this.board.getGridRow(row)[col] = thisBlock.getID();
+		setCell(row, col, id);
 	}
 
 	/**
@@ -209,12 +511,34 @@ public class GameBoard {
 	 * @return the block index if the block exists
 	 */
 	public int blockExist(String id) {
+		if (isIndexed(id)) return this.blockIndex[id.charAt(0)];
 		for (int block = 0; block < this.board.getBlocks().size(); block++) {
 			if (this.board.getBlockID(block).equals(id)) return block;
 		}
 		return -1;
 	}
 
+	/** (Private)
+	 * check if a block id is kept in blockIndex
+	 *
+	 * @param id the id of the block
+	 * @return true if the id is a single character below INDEXED_IDS
+	 */
+	private boolean isIndexed(String id) {
+		return id.length() == 1 && id.charAt(0) < INDEXED_IDS;
+	}
+
+	/** (Private)
+	 * take back the block setBlock just added
+	 *
+	 * @param block the last block of the board
+	 */
+	private void removeLastBlock(Block block) {
+		clearBlockFromGrid(block);
+		this.board.getBlocks().remove(this.board.getBlocks().size() - 1);
+		if (isIndexed(block.getID())) this.blockIndex[block.getID().charAt(0)] = -1;
+	}
+
 	/**
 	 * Added by James :)
 	 * get the number of moves IntegerProperty
@@ -240,26 +564,16 @@ public class GameBoard {
 	 */
 	public void checkGameOver() {
 		this.gameState.setValue(false);
-		for (int i = 0; i < 6; i++) {
-			for (int j = 0; j < 6; j++) {
-				if (this.board.getGridRow(i)[j].equals("z")) {
-					int count = 0;
-					int k = j + 2;
-					int left = 6 - k;
-					while (k < 6) {
-						if (this.board.getGridRow(i)[k].equals("*")) count++;
-						k++;
-					}
-					if (count == left) {
-						Integer[] lastPosition = new Integer[2];
-						lastPosition[0] = i;
-						lastPosition[1] = 4;
-						this.makeMove("z", lastPosition, true);
-						this.gameState.setValue(true);
-					}
-					break;
-				}
-			}
+		Block z = getBlock("z");
+		if (z == null || !z.isHorizontal()) return;
+		// every cell on the right of "z" is empty
+		int lastCol = getGridSize() - z.getSize();
+		if (blockRange("z")[1] == lastCol) {
+			Integer[] lastPosition = new Integer[2];
+			lastPosition[0] = z.getRow();
+			lastPosition[1] = lastCol;
+			this.makeMove("z", lastPosition, true);
+			this.gameState.setValue(true);
 		}
 	}
 
@@ -281,17 +595,21 @@ public class GameBoard {
 	 * @pre the move is valid (within grid, according to the block direction)
 	 */
 	public void makeMove(String id, Integer[] newStartPosition, boolean redoAutomatisation) {
-		for (Block block : this.board.getBlocks()) {
-			if (block.getID().equals(id)) {
-				if (!block.samePosition(newStartPosition)
-						&& !collide(block, newStartPosition)) {
-					Block oldBlock = new Block(id, block.getPosition().get(0)[0], block.getPosition().get(0)[1]);
+		Block block = getBlock(id);
+		if (block != null) {
+			if (!block.samePosition(newStartPosition)
+					&& !collide(block, newStartPosition)) {
+				Block oldBlock = new Block(id, block.getPosition().get(0)[0], block.getPosition().get(0)[1]);
+				// a short lock against snapshot, searches never hold it
+				synchronized (this) {
 					clearBlockFromGrid(block);
-					this.prevLocations.add(oldBlock);
 					block.setNewPosition(newStartPosition);
 					addBlockToGrid(block);
-					if (redoAutomatisation) nextLocations.clear();
+					this.stateVersion++;
+					followSolution(id, oldBlock.getPosition().get(0), newStartPosition);
 				}
+				this.prevLocations.add(oldBlock);
+				if (redoAutomatisation) nextLocations.clear();
 			}
 		}
 	}
@@ -307,11 +625,10 @@ public class GameBoard {
 			Block copy = this.prevLocations.get(this.prevLocations.size() - 1);
 			Block block = new Block(copy.getID(), copy.getPosition().get(0)[0], copy.getPosition().get(0)[1]);
 			this.prevLocations.remove(this.prevLocations.size() - 1);
-			for (Block oldBlock : this.board.getBlocks()) {
-				if (oldBlock.getID().equals(block.getID())) {
-					Block toAdd = new Block(oldBlock.getID(), oldBlock.getPosition().get(0)[0], oldBlock.getPosition().get(0)[1]);
-					this.nextLocations.add(toAdd);
-				}
+			Block oldBlock = getBlock(block.getID());
+			if (oldBlock != null) {
+				Block toAdd = new Block(oldBlock.getID(), oldBlock.getPosition().get(0)[0], oldBlock.getPosition().get(0)[1]);
+				this.nextLocations.add(toAdd);
 			}
 			makeMove(block.getID(), block.getPosition().get(0), false);
 			this.prevLocations.remove(this.prevLocations.size() - 1);
@@ -329,11 +646,10 @@ public class GameBoard {
 			Block copy = this.nextLocations.get(this.nextLocations.size() - 1);
 			Block block = new Block(copy.getID(), copy.getPosition().get(0)[0], copy.getPosition().get(0)[1]);
 			this.nextLocations.remove(this.nextLocations.size() - 1);
-			for (Block oldBlock : this.board.getBlocks()) {
-				if (oldBlock.getID().equals(block.getID())) {
-					Block toAdd = new Block(oldBlock.getID(), oldBlock.getPosition().get(0)[0], oldBlock.getPosition().get(0)[1]);
-					this.prevLocations.add(toAdd);
-				}
+			Block oldBlock = getBlock(block.getID());
+			if (oldBlock != null) {
+				Block toAdd = new Block(oldBlock.getID(), oldBlock.getPosition().get(0)[0], oldBlock.getPosition().get(0)[1]);
+				this.prevLocations.add(toAdd);
 			}
 			makeMove(block.getID(), block.getPosition().get(0), false);
 			this.prevLocations.remove(this.prevLocations.size() - 1);
@@ -364,23 +680,48 @@ public class GameBoard {
 	 * Edited by Edwin
 	 */
 	private boolean collide(Block thisBlock, Integer[] newStartPosition) {
-		for (Block block : this.board.getBlocks()) {
-			if (!block.getID().equals(thisBlock.getID())) {
-				for (Integer[] position : block.getPosition()) {
-					if (thisBlock.isHorizontal()
-							? position[1] >= newStartPosition[1] && position[1] <= newStartPosition[1] + thisBlock.getSize() - 1 &&
-							position[0] == newStartPosition[0]
-							: position[0] >= newStartPosition[0] && position[0] <= newStartPosition[0] + thisBlock.getSize() - 1 &&
-							position[1] == newStartPosition[1]) return true;
-				}
-			}
+		boolean horizontal = thisBlock.isHorizontal();
+		int size = thisBlock.getSize();
+		int line = horizontal ? newStartPosition[0] : newStartPosition[1];
+		int start = horizontal ? newStartPosition[1] : newStartPosition[0];
+		if (line < 0 || line >= getGridSize() || start < 0 || start + size > getGridSize()) return true;
+		int others = horizontal ? this.rowMasks[line] : this.colMasks[line];
+		if (line == (horizontal ? thisBlock.getRow() : thisBlock.getCol())) {
+			others &= ~lineMask(horizontal ? thisBlock.getCol() : thisBlock.getRow(), size);
+		}
+		return (others & lineMask(start, size)) != 0;
+	}
+
+	/** (Private)
+	 * the cells of a row/col mask covered by a block
+	 *
+	 * @param start the starting col (horizontal) or row (vertical) of the block
+	 * @param size  the size of the block
+	 * @return the mask with bits start to start + size - 1 set
+	 */
+	private static int lineMask(int start, int size) {
+		return ((1 << size) - 1) << start;
+	}
+
+	/** (Private)
+	 * write a cell of the grid, keeping the occupancy masks in step
+	 *
+	 * @param row   the row of the cell
+	 * @param col   the col of the cell
+	 * @param block the index of the block covering the cell, -1 if it is empty
+	 */
+	private void setCell(int row, int col, int block) {
+		this.board.setCell(row, col, (byte) (block + 1));
+		if (block == -1) {
+			this.rowMasks[row] &= ~(1 << col);
+			this.colMasks[col] &= ~(1 << row);
+		} else {
+			this.rowMasks[row] |= 1 << col;
+			this.colMasks[col] |= 1 << row;
 		}
-		if (thisBlock.isHorizontal()
-				? newStartPosition[1] + thisBlock.getSize() - 1 > 6
-				: newStartPosition[0] + thisBlock.getSize() - 1 > 6) return true;
-		return false;
 	}
 
+
 	/**
 	 * clear block from the grid
 	 *
@@ -389,7 +730,7 @@ public class GameBoard {
 	 */
 	private void clearBlockFromGrid(Block block) {
 		for (Integer[] position : block.getPosition()) {
-			this.board.getGridRow(position[0])[position[1]] = "*";
+			setCell(position[0], position[1], -1);
 		}
 	}
 
@@ -400,8 +741,9 @@ public class GameBoard {
 	 *              Added by Edwin
 	 */
 	private void addBlockToGrid(Block block) {
+		int idx = blockExist(block.getID());
 		for (Integer[] position : block.getPosition()) {
-			this.board.getGridRow(position[0])[position[1]] = block.getID();
+			setCell(position[0], position[1], idx);
 		}
 	}
 
@@ -429,17 +771,13 @@ public class GameBoard {
 		Block b = this.board.getBlock(idx);
 		int size = b.getSize();
 		Integer[] intv = new Integer[2];
-		if (b.isHorizontal()) {
-			intv[0] = b.getCol();
-			intv[1] = b.getCol();
-			while (intv[0] > 0 && this.board.getGridRow(b.getRow())[intv[0] - 1].equals("*")) intv[0]--;
-			while (intv[1] + size - 1 < 5 && this.board.getGridRow(b.getRow())[intv[1] + size].equals("*")) intv[1]++;
-		} else {
-			intv[0] = b.getRow();
-			intv[1] = b.getRow();
-			while (intv[0] > 0 && this.board.getGridRow(intv[0] - 1)[b.getCol()].equals("*")) intv[0]--;
-			while (intv[1] + size - 1 < 5 && this.board.getGridRow(intv[1] + size)[b.getCol()].equals("*")) intv[1]++;
-		}
+		int start = b.isHorizontal() ? b.getCol() : b.getRow();
+		int others = (b.isHorizontal() ? this.rowMasks[b.getRow()] : this.colMasks[b.getCol()]) & ~lineMask(start, size);
+		// the nearest occupied cell before and after the block stops it
+		int before = others & lineMask(0, start);
+		int after = others & ~lineMask(0, start + size);
+		intv[0] = before == 0 ? 0 : Integer.SIZE - Integer.numberOfLeadingZeros(before);
+		intv[1] = (after == 0 ? getGridSize() : Integer.numberOfTrailingZeros(after)) - size;
 		return intv;
 	}
 
@@ -451,10 +789,14 @@ public class GameBoard {
 	 * Added by Edwin
 	 */
 	public GameBoard duplicateBoard() {
-		GameBoard newBoard = new GameBoard();
-		newBoard.board.getGrid().clear();
-		for (String[] strArr : this.board.getGrid()) newBoard.board.getGrid().add(strArr.clone());
+		GameBoard newBoard = new GameBoard(getGridSize(), getExitRow());
+		newBoard.board.copyGrid(this.board);
 		for (Block block : this.board.getBlocks()) newBoard.getBlocks().add(block.duplicate());
+		newBoard.blockIndex = this.blockIndex.clone();
+		newBoard.rowMasks = this.rowMasks.clone();
+		newBoard.colMasks = this.colMasks.clone();
+		newBoard.distanceMap = this.distanceMap;
+		newBoard.unmappable = this.unmappable;
 		return newBoard;
 	}
 
@@ -1,38 +1,104 @@
 package gridlock.model;
 
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 
-import static java.lang.Thread.sleep;
-
 /**
  * GameBoardGenerator Class is designed to implement different level puzzle generator
- * and uses multithreading to generate medium and hard levels while the main program is running
+ * and uses multithreading to generate medium and hard levels while the main program is running:
+ * run() starts a pool of workers (by default one per spare core) that fill both stocks in parallel
  * Added by Edwin
  */
 public class GameBoardGenerator implements Runnable {
-    private ArrayList<GameBoard> medium;
-    private ArrayList<GameBoard> hard;
-    private boolean threadRun;
-    private boolean threadResume;
-    private boolean threadAbortRequest; // The order to abort procedures in the thread. There are two abortion
-                                        // checks in place: newEndGameBoardList and generateGameBoard
-    private boolean isUsed;
+    // End game-board lists longer than this (likely on big grids) are dropped, and another E is tried
+    private static final int END_BOARD_LIMIT = 30000;
+    // The most puzzles kept in each of the medium and hard stocks
+    private static final int STOCK_SIZE = 16;
+    // How many times more on-demand tries a grid without campaign puzzles to fall back on gets
+    private static final int NO_CAMPAIGN_RETRIES = 10;
+
+    // Bounded stocks: consumers poll without waiting, workers park on put while a stock is full
+    private final BlockingQueue<GameBoard> medium;
+    private final BlockingQueue<GameBoard> hard;
+    // The fields below are guarded by lock, workers wait on changed (instead of polling) for them to change
     private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = this.lock.newCondition();
+    private final List<Thread> threads = new ArrayList<>();
+    private boolean threadRun;
+    private int pauses;                 // The number of pauseThread calls not resumed yet
+    private int busyWorkers;            // The number of workers generating a puzzle
+    private volatile boolean threadAbortRequest; // The order to abort procedures in the thread. There are two abortion
+                                                 // checks in place: newEndGameBoardList and generateGameBoard
+    private final int gridSize;
+    private final int exitRow;
+    private final int workers;
+    private final PuzzleStore store;    // keeps the stocks across restarts, null for none
+
+    /** (Private)
+     * Heuristics Class holds the settings of one difficulty level, per generation so that workers
+     * generating different levels at the same time do not share them
+     */
+    private static class Heuristics {
+        int minMoves;
+        int maxMoves;
+        int minBlocks;
+        int maxBlocks;
+        double fillInProb;
+        double sizeTwoProb;
+        String refKey;      //to refer to campaign mode
 
-    private int minMoves;
-    private int maxMoves;
-    private int minBlocks;
-    private int maxBlocks;
-    private double fillInProb;
-    private double sizeTwoProb;
-    private String refKey;      //to refer to campaign mode
+        /**
+         * Determine the initial settings according to difficulty level, mainly the number of blocks' range,
+         * and the minimal and maximal number of moves permitted.
+         *
+         * Additional saved info includes (1) the probability corresponding to gameBoard filling
+         * in newEndGameBoard function, and (2) keyword for reference to a template puzzle if after several
+         * trials failing to find a puzzle.
+         * @param d the difficulty level
+         * @param gridSize the length of the (square) grid
+         */
+        Heuristics (Difficulty d, int gridSize) {
+            if (d.equals(Difficulty.EASY)) {
+                minMoves = 4;
+                maxMoves = 7;
+                minBlocks = 4;
+                maxBlocks = 6;
+                fillInProb = 0.3;
+                sizeTwoProb = 0.5;
+                refKey = "easy";
+            } else if (d.equals(Difficulty.MEDIUM)) {
+                minMoves = 8;
+                maxMoves = 13;
+                minBlocks = 7;
+                maxBlocks = 12;
+                fillInProb = 0.5;
+                sizeTwoProb = 0.55;
+                refKey = "medium";
+            } else {
+                minMoves = 14;
+                maxMoves = 50;
+                minBlocks = 9;
+                maxBlocks = 15;
+                fillInProb = 0.6;
+                sizeTwoProb = 0.55;
+                refKey = "hard";
+            }
+            // Bigger grids hold more blocks for the same density
+            double area = gridSize * gridSize / (double) (Board.DEFAULT_SIZE * Board.DEFAULT_SIZE);
+            minBlocks = (int) Math.round(minBlocks * area);
+            maxBlocks = (int) Math.round(maxBlocks * area);
+        }
+    }
 
     /** (Private)
-     * Node Class contains a GameBoard object and other information for the level generator BFS graph
+     * Node Class contains an immutable board snapshot and other information for the level generator BFS graph.
+     * Neighbour snapshots share the puzzle's BoardLayout, so each node only costs a few bytes per block.
      */
     private static class Node {
-        GameBoard board;
+        BoardSnapshot board;
         boolean isWin;
         int dist;
         Node pred;
@@ -41,11 +107,9 @@ public class GameBoardGenerator implements Runnable {
          * Class constructor for Node Class
          * @param board the starting board
          */
-        Node (GameBoard board) {
+        Node (BoardSnapshot board) {
             this.board = board;
-            Block zBlock = board.getBlock("z");
-            if (zBlock != null && Arrays.equals(zBlock.getPosition().get(0), new Integer[] {2, 4})) this.isWin = true;
-            else this.isWin = false;
+            this.isWin = board.isWin();
             this.dist = 60; // so far there has not been puzzle with >= 49
             this.pred = null;
         }
@@ -61,41 +125,16 @@ public class GameBoardGenerator implements Runnable {
             // Assume for now there is no inheritance of Node
             if (!obj.getClass().equals(this.getClass())) return false;
             Node n = (Node) obj;
-            for (int i = 0; i < 6; i++) {
-                for (int j = 0; j < 6; j++) {
-                    if (!(this.board.getGrid().get(i)[j].equals(n.board.getGrid().get(i)[j]))) return false;
-                }
-            }
-            return true;
+            return this.board.equals(n.board);
         }
         /**
-         * The hash code for Node is editted to obtain a faster equivalent-and-visited node search
-         * for BFS in generateGameBoard.
-         * This checks for eleven block ids (including "z" block) and compare its changeable row/column
-         * position in thisNode and thatNode (Obviously two equal nodes will have a same game-board
-         * configuration, and thus a same changeable row/column positions for every id).
-         *
-         * If we assume that each block's fixed column/row (corresponding to id)
-         * is always fixed during the game play (since you only slide it), then this function ensures
-         * that two nodes with the same hashCode also have the exact-same eleven blocks' arrangements.
-         * This may increase the "chance" of finding maximally one block, given a hashCode number.
+         * The hash code for Node is the Zobrist hash of its snapshot, which every move updates in constant
+         * time, and which covers every block (not only the first few ids).
          * @return hashCode number
          */
         @ Override
         public int hashCode () {
-            // For first eleven block IDs (z, a, b, c, d, ...),  ordered and filled with
-            // its changeable row/col val. There are 0-5 values, based on prime number 7,
-            // size: 7^11 = 1.9 * 10^9
-            int prime = 7;
-            int result = 1; // recommended as non-zero
-            for (int i = 0; i < 11; i++) {
-                String id = Character.toString((char)('a' + (i == 10 ? 25 : i)));
-                Block b = this.board.getBlock(id);
-                int digit = (b == null ? 5 :
-                        b.isHorizontal() ? b.getCol() : b.getRow());
-                result = prime * result + digit;
-            }
-            return result;
+            return this.board.hashCode();
         }
 
         /**
@@ -117,29 +156,33 @@ public class GameBoardGenerator implements Runnable {
          */
         public List <Node> produceNeighborNodes () {
             List <Node> neighborNodeList = new ArrayList<>();
-            for (Block b: this.board.getBlocks()) {
+            int blockCount = this.board.getLayout().getBlockCount();
+            int[][] ranges = ranges();
+            for (int b = 0; b < blockCount; b++) {
                 // Consider all possibility of its new position (diff than currently)
-                Integer[] intv = this.board.blockRange(b.getID());
-                for (int i = intv[0]; i <= intv[1]; i++) {
-                    GameBoard duplicate = this.board.duplicateBoard();
-                    if (b.isHorizontal()) {
-                        if (i == b.getCol()) continue;
-                        duplicate.makeMove(b.getID(), new Integer[]{b.getRow(), i}, true);
-                    } else {
-                        if (i == b.getRow()) continue;
-                        duplicate.makeMove(b.getID(), new Integer[]{i, b.getCol()}, true);
-                    }
-                    Node potentNeighNode = new Node (duplicate);
+                for (int i = ranges[b][0]; i <= ranges[b][1]; i++) {
+                    if (i == this.board.getOffset(b)) continue;
+                    Node potentNeighNode = new Node (this.board.move(b, i));
                     // Decide further restriction
                     if ((isBothWin(potentNeighNode) || isBothNotWin(potentNeighNode)) &&
-                            isSameRange (potentNeighNode) &&
-                            isSameHemisphere (potentNeighNode)) continue;
+                            isSameRange (ranges, potentNeighNode) &&
+                            isSameHemisphere (ranges, potentNeighNode)) continue;
                     neighborNodeList.add(potentNeighNode);
                 }
             }
             return neighborNodeList;
         }
 
+        /** (Private)
+         * Get the range of every block of the node's board
+         * @return the smallest and largest reachable offset of every block, in layout order
+         */
+        private int[][] ranges() {
+            int[][] ranges = new int[this.board.getLayout().getBlockCount()][];
+            for (int b = 0; b < ranges.length; b++) ranges[b] = this.board.getRange(b);
+            return ranges;
+        }
+
         /** (Private)
          * Check if both nodes are win nodes
          * @param n the node to be checked
@@ -161,49 +204,48 @@ public class GameBoardGenerator implements Runnable {
 
         /** (Private)
          * Check if the node is in the same range
+         * @param ranges the ranges of this node's blocks
          * @param n the node to be checked
          * @return true if the two nodes are in the same range
          * @return false if the two nodes are not in the same range
          */
-        private boolean isSameRange(Node n) {
-            for (Block thisBlock : this.board.getBlocks()) {
-                String id = thisBlock.getID();
-                Integer[] br1 = this.board.blockRange(id);
-                Integer[] br2 = n.board.blockRange(id);
-                if (br1[0] != br2[0] || br1[1] != br2[1]) return false;
+        private boolean isSameRange(int[][] ranges, Node n) {
+            for (int b = 0; b < ranges.length; b++) {
+                int[] br2 = n.board.getRange(b);
+                if (ranges[b][0] != br2[0] || ranges[b][1] != br2[1]) return false;
             }
             return true;
         }
 
         /**
          * Check if the node is in the same hemisphere
+         * @param ranges the ranges of this node's blocks
          * @param n the node to be checked
          * @return true if they are in the same hemisphere
          * @return false if they are not in the same hemisphere
          */
-        private boolean isSameHemisphere(Node n) {
-            for (Block thisBlock : this.board.getBlocks()) {
-                String id = thisBlock.getID();
-                Block thatBlock = n.board.getBlock(id);
-                int thisRow = thisBlock.getRow();
-                int thisCol = thisBlock.getCol();
-                int thatRow = thatBlock.getRow();
-                int thatCol = thatBlock.getCol();
-                for (Block otherOrientationBlock : this.board.getBlocks()) {
-                    boolean a = thisBlock.isHorizontal();
+        private boolean isSameHemisphere(int[][] ranges, Node n) {
+            BoardLayout layout = this.board.getLayout();
+            for (int b = 0; b < ranges.length; b++) {
+                int thisRow = this.board.getRow(b);
+                int thisCol = this.board.getCol(b);
+                int thatRow = n.board.getRow(b);
+                int thatCol = n.board.getCol(b);
+                boolean a = layout.isHorizontal(b);
+                for (int other = 0; other < ranges.length; other++) {
                     // To reduce nodes: otherOri should "intersect thisBlock's range"
-                    if (a == otherOrientationBlock.isHorizontal()) continue;
-                    int otherRow = otherOrientationBlock.getRow();
-                    int otherCol = otherOrientationBlock.getCol();
-                    Integer[] thisBr = this.board.blockRange(id);
-                    Integer[] otherBr = this.board.blockRange(otherOrientationBlock.getID());
+                    if (a == layout.isHorizontal(other)) continue;
+                    int otherRow = this.board.getRow(other);
+                    int otherCol = this.board.getCol(other);
+                    int[] thisBr = ranges[b];
+                    int[] otherBr = ranges[other];
                     if (a) {
-                        if (thisBr[0] <= otherCol && thisBr[1] + thisBlock.getSize()-1 >= otherCol
-                                && otherBr[0] <= thisRow && otherBr[1] + otherOrientationBlock.getSize()-1 >= thisRow
+                        if (thisBr[0] <= otherCol && thisBr[1] + layout.getSize(b)-1 >= otherCol
+                                && otherBr[0] <= thisRow && otherBr[1] + layout.getSize(other)-1 >= thisRow
                                 && (thisCol-otherCol)*(thatCol-otherCol) <= 0) return false;
                     } else {
-                        if (thisBr[0] <= otherRow && thisBr[1] + thisBlock.getSize()-1 >= otherRow
-                                && otherBr[0] <= thisCol && otherBr[1] + otherOrientationBlock.getSize()-1 >= thisCol
+                        if (thisBr[0] <= otherRow && thisBr[1] + layout.getSize(b)-1 >= otherRow
+                                && otherBr[0] <= thisCol && otherBr[1] + layout.getSize(other)-1 >= thisCol
                                 && (thisRow-otherRow)*(thatRow-otherRow) <= 0) return false;
                     }
                 }
@@ -213,124 +255,133 @@ public class GameBoardGenerator implements Runnable {
     }
 
     /**
-     * Constructor for GameBoardGenerator class
+     * Constructor for GameBoardGenerator class, for the classic 6x6 board
      */
     public GameBoardGenerator() {
-        this.medium = new ArrayList<>();
-        this.hard = new ArrayList<>();
+        this(Board.DEFAULT_SIZE, Board.DEFAULT_EXIT_ROW);
+    }
+
+    /**
+     * Constructor for GameBoardGenerator class
+     * @param gridSize the length of the (square) grid of the puzzles
+     * @param exitRow the row with the exit on its right
+     */
+    public GameBoardGenerator(int gridSize, int exitRow) {
+        this(gridSize, exitRow, Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+    }
+
+    /**
+     * Constructor for GameBoardGenerator class
+     * @param gridSize the length of the (square) grid of the puzzles
+     * @param exitRow the row with the exit on its right
+     * @param workers the number of threads run() generates puzzles on, at least 1
+     */
+    public GameBoardGenerator(int gridSize, int exitRow, int workers) {
+        this(gridSize, exitRow, workers, PuzzleStore.getInstance());
+    }
+
+    /**
+     * Constructor for GameBoardGenerator class
+     * @param gridSize the length of the (square) grid of the puzzles
+     * @param exitRow the row with the exit on its right
+     * @param workers the number of threads run() generates puzzles on, at least 1
+     * @param store the store the stocks are kept in across restarts, null to keep them in memory only
+     */
+    public GameBoardGenerator(int gridSize, int exitRow, int workers, PuzzleStore store) {
+        this.store = store;
+        this.medium = new ArrayBlockingQueue<>(STOCK_SIZE);
+        this.hard = new ArrayBlockingQueue<>(STOCK_SIZE);
+        this.gridSize = gridSize;
+        this.exitRow = exitRow;
+        this.workers = Math.max(1, workers);
     }
 
     /**
      * Get an easy level puzzle
-     * @return a GameBoard of level easy
+     * @return a GameBoard of level easy, null if none could be generated on a grid without campaign puzzles
      */
     public GameBoard getEasy() {
-        pauseThread(); isUsed = true;
-        GameBoard e = generateFast(Difficulty.EASY);
-        e.setMinMoves();
-        isUsed = false; resumeThread();
+        GameBoard e;
+        pauseThread();
+        try {
+            e = generateFast(Difficulty.EASY);
+        } finally {
+            resumeThread();
+        }
+        if (e != null) e.setMinMoves();
         return e;
     }
 
     /**
-     * Get a medium level puzzle
-     * @return a GameBoard of level medium
+     * Get a medium level puzzle, from the stock if there is one
+     * @return a GameBoard of level medium, null if none could be generated on a grid without campaign puzzles
      * @post medium.size()--
      */
     public GameBoard getMedium() {
-        pauseThread(); isUsed = true;
-        GameBoard med;
-        if (this.medium.size() > 0) {
-            this.lock.lock();
-            med = this.medium.remove(0);
-            this.lock.unlock();
-        } else {
-            med = generateFast(Difficulty.MEDIUM);
-        }
-        med.setMinMoves();
-        isUsed = false; resumeThread();
-        return med;
+        return getFromStock(this.medium, Difficulty.MEDIUM);
     }
+
     /**
-     * Get a hard level puzzle
-     * @return a GameBoard of level hard
+     * Get a hard level puzzle, from the stock if there is one
+     * @return a GameBoard of level hard, null if none could be generated on a grid without campaign puzzles
      * @post hard.size()--
      */
     public GameBoard getHard() {
-        pauseThread(); isUsed = true;
-        GameBoard h;
-        if (this.hard.size() > 0) {
-            this.lock.lock();
-            h = this.hard.remove(0);
-            this.lock.unlock();
-        } else {
-            h = generateFast(Difficulty.HARD);
+        return getFromStock(this.hard, Difficulty.HARD);
+    }
+
+    /** (Private)
+     * Take a puzzle from a stock without stopping the workers; only an empty stock pauses them,
+     * so that the puzzle generated on demand gets the cpu
+     * @param stock the medium or hard stock
+     * @param d the level difficulty of the stock
+     * @return the puzzle game-board, null as in generateFast
+     */
+    private GameBoard getFromStock(BlockingQueue<GameBoard> stock, Difficulty d) {
+        GameBoard result = stock.poll();
+        if (result != null) {
+            // stocked puzzles come with their min moves, from the worker or the store
+            if (this.store != null) this.store.remove(d, result);
+            return result;
         }
-        h.setMinMoves();
-        isUsed = false; resumeThread();
-        return h;
+        pauseThread();
+        try {
+            result = generateFast(d);
+        } finally {
+            resumeThread();
+        }
+        if (result != null) result.setMinMoves();
+        return result;
     }
+
     /** (Private)
      * Generate a puzzle when demanded by users. Since it has to be fast, there is some number of
      * tries (5 for easy, 1 for medium and hard), that when failed, will automatically refer to a campaign puzzle.
+     * There are only campaign puzzles of the classic size, other sizes try NO_CAMPAIGN_RETRIES times as often
+     * and then give up.
      * @param d the level difficulty
-     * @return the puzzle game-board
+     * @return the puzzle game-board, null if none was found and there is no campaign puzzle of the size
      */
     private GameBoard generateFast(Difficulty d) {
         GameBoard result = null;
         int retry = 0;
         int retryLimit = 1; if (d.equals(Difficulty.EASY)) retryLimit = 5;
+        boolean hasCampaign = this.gridSize == Board.DEFAULT_SIZE && this.exitRow == Board.DEFAULT_EXIT_ROW;
+        if (!hasCampaign) retryLimit *= NO_CAMPAIGN_RETRIES;
         while (result == null && retry < retryLimit) {
             result = generateGameBoard(d);
             retry++;
         }
-        if (result == null) {
+        if (result == null && hasCampaign) {
             Random random = new Random();
             int num = random.nextInt(19) + 1;
             result = new GameBoard();
-            result.process("src/gridlock/resources/" + refKey
+            result.process("src/gridlock/resources/" + new Heuristics(d, this.gridSize).refKey
                     + "/" + num + ".txt");
         }
         return result;
     }
 
-    /** (Private)
-     * Determine and save the initial settings according to difficulty level, mainly the number of blocks' range,
-     * and the minimal and maximal number of moves permitted.
-     *
-     * Additional saved info includes (1) the probability corresponding to gameBoard filling
-     * in newEndGameBoard function, and (2) keyword for reference to a template puzzle if after several
-     * trials failing to find a puzzle.
-     * @param d the difficulty level
-     */
-    private void initHeuristics (Difficulty d) {
-        if (d.equals(Difficulty.EASY)) {
-            minMoves = 4;
-            maxMoves = 7;
-            minBlocks = 4;
-            maxBlocks = 6;
-            fillInProb = 0.3;
-            sizeTwoProb = 0.5;
-            refKey = "easy";
-        } else if (d.equals(Difficulty.MEDIUM)) {
-            minMoves = 8;
-            maxMoves = 13;
-            minBlocks = 7;
-            maxBlocks = 12;
-            fillInProb = 0.5;
-            sizeTwoProb = 0.55;
-            refKey = "medium";
-        } else {
-            minMoves = 14;
-            maxMoves = 50;
-            minBlocks = 9;
-            maxBlocks = 15;
-            fillInProb = 0.6;
-            sizeTwoProb = 0.55;
-            refKey = "hard";
-        }
-    }
-
     /** (Private)
      * Generate a random end game-board list.
      *
@@ -347,77 +398,26 @@ public class GameBoardGenerator implements Runnable {
      * (2) Each block corresponding to id has same column (if vertical) or row (if horizontal) as E's version
      * (3) If there are >= 2 blocks in the same row/column, their relative positions must be equal to E's
      *
-     * @return a list of end game-boards
+     * @param h the settings of the difficulty level
+     * @return a list of end game-boards, null if aborted or if there are more than END_BOARD_LIMIT
      */
-    private List <GameBoard> newEndGameBoardList() {
-        GameBoard referencedWinBoard = newEndGameBoard();
+    private List <GameBoard> newEndGameBoardList(Heuristics h) {
+        GameBoard referencedWinBoard = newEndGameBoard(h);
 
         List <GameBoard> result = new ArrayList<>();
         List <GameBoard> tempResult = new ArrayList<>();
-        result.add(new GameBoard());
-        for (int i = 0; i < 6; i++) {
+        result.add(new GameBoard(this.gridSize, this.exitRow));
+        for (int i = 0; i < this.gridSize; i++) {
             for (int j = 0; j < 2; j++) {
+                final boolean isRow = j == 0;
+                List<Block> bl = referencedWinBoard.blocksList(i, isRow);
+                bl.sort(Comparator.comparingInt(b -> isRow ? b.getCol() : b.getRow()));
                 for (GameBoard gb : result) {
                     // Check for abort request
                     if (threadAbortRequest) return null;
                     // pre-con: all previous iterated i,j are covered in result list
-                    GameBoard tempGb;
-                    List<Block> bl = referencedWinBoard.blocksList(i, (j == 0));
-                    if (bl.size() == 3) {
-                        tempResult.add(gb);
-                        for (Block b: bl) {
-                            if (!gb.setBlock(b.getID(), b.getRow(), b.getCol(), b.getSize(), b.isHorizontal())) {
-                                tempResult.remove(tempResult.size()-1);
-                                break;
-                            }
-                        }
-                    } else if (bl.size() == 2) {
-                        // if there is one "z"
-                        Block primaryBlock = bl.get(1);
-                        Block secondaryBlock = bl.get(0);
-                        if (j == 0 ? bl.get(0).getCol() < bl.get(1).getCol()
-                                : bl.get(0).getRow() < bl.get(1).getRow()) {
-                            primaryBlock = bl.get(0);
-                            secondaryBlock = bl.get(1);
-                        }
-                        for (int pCount = 0; pCount + primaryBlock.getSize() - 1 < 6; pCount++) {
-                            if (secondaryBlock.getID().equals("z")) {
-                                tempGb = gb.duplicateBoard();
-                                if (tempGb.setBlock("z", 2, 4, 2, true) &&
-                                        tempGb.setBlock(primaryBlock.getID(), j == 0 ? primaryBlock.getRow() : pCount,
-                                                j == 0 ? pCount : primaryBlock.getCol(), primaryBlock.getSize(),
-                                                primaryBlock.isHorizontal()))
-                                        tempResult.add(tempGb);
-                            } else {
-                                for (int sCount = pCount + primaryBlock.getSize();
-                                     sCount + secondaryBlock.getSize() - 1 < 6; sCount++) {
-                                    tempGb = gb.duplicateBoard();
-                                    if (tempGb.setBlock(secondaryBlock.getID(), j == 0 ? secondaryBlock.getRow() : sCount,
-                                            j == 0 ? sCount : secondaryBlock.getCol(), secondaryBlock.getSize(),
-                                            secondaryBlock.isHorizontal()) &&
-                                        tempGb.setBlock(primaryBlock.getID(), j == 0 ? primaryBlock.getRow() : pCount,
-                                            j == 0 ? pCount : primaryBlock.getCol(), primaryBlock.getSize(),
-                                            primaryBlock.isHorizontal()))
-                                        tempResult.add(tempGb);
-                                }
-                            }
-                        }
-                    } else if (bl.size() == 1) {
-                        Block b = bl.get(0);
-                        if (b.getID().equals("z")) {
-                            if (gb.setBlock("z", 2, 4, 2, true))
-                                tempResult.add(gb);
-                        } else {
-                            for (int count = 0; count + b.getSize() - 1 < 6; count++) {
-                                tempGb = gb.duplicateBoard();
-                                if (tempGb.setBlock(b.getID(), j == 0 ? b.getRow() : count, j == 0 ? count : b.getCol(),
-                                        b.getSize(), b.isHorizontal()))
-                                    tempResult.add(tempGb);
-                            }
-                        }
-                    } else {
-                        tempResult.add(gb);
-                    }
+                    placeLine(gb, bl, 0, 0, tempResult);
+                    if (tempResult.size() > END_BOARD_LIMIT) return null;
                 }
                 result = tempResult;
                 tempResult = new ArrayList<>();
@@ -428,34 +428,58 @@ public class GameBoardGenerator implements Runnable {
         return result;
     }
 
+    /** (Private)
+     * Add every way to place the blocks of one row/col on a game-board, keeping their order along it.
+     * The "z" car always ends at the exit.
+     * @param gb the game-board with the previous rows/cols placed
+     * @param line the blocks of the row/col, in their order along it
+     * @param idx the number of blocks of the line placed so far
+     * @param minPos the first position along the line after the placed blocks
+     * @param result the list to add the finished game-boards to
+     */
+    private void placeLine(GameBoard gb, List<Block> line, int idx, int minPos, List<GameBoard> result) {
+        if (idx == line.size()) {
+            result.add(gb);
+            return;
+        }
+        Block b = line.get(idx);
+        int first = b.getID().equals("z") ? this.gridSize - b.getSize() : minPos;
+        for (int pos = first; pos + b.getSize() <= this.gridSize; pos++) {
+            GameBoard tempGb = gb.duplicateBoard();
+            if (tempGb.setBlock(b.getID(), b.isHorizontal() ? b.getRow() : pos, b.isHorizontal() ? pos : b.getCol(),
+                    b.getSize(), b.isHorizontal()))
+                placeLine(tempGb, line, idx + 1, pos + b.getSize(), result);
+        }
+    }
+
     /** (Private)
      * Generate a random end game-board state
+     * @param h the settings of the difficulty level
      * @return an end game-board
      */
-    private GameBoard newEndGameBoard() {
+    private GameBoard newEndGameBoard(Heuristics h) {
         int currNumOfBlock = 0;
-        GameBoard gb = new GameBoard();
-        List <String []> grid = gb.getGrid();
-        if (gb.setBlock("z", 2, 4, 2, true)) currNumOfBlock++;
-        grid.get(2)[3] = "-";
+        GameBoard gb = new GameBoard(this.gridSize, this.exitRow);
+        if (gb.setBlock("z", this.exitRow, this.gridSize - 2, 2, true)) currNumOfBlock++;
+        gb.setBlockedCell(this.exitRow, this.gridSize - 3, true);
 
         Random random = new Random();
-        int row = random.nextInt(5);
-        int col = randomBinaryChoice(4, 5, 0.5);
+        int row = random.nextInt(this.gridSize - 1);
+        int col = randomBinaryChoice(this.gridSize - 2, this.gridSize - 1, 0.5);
         int s = randomBinaryChoice(2, 3, 0.5);
         if (gb.setBlock("a", row, col, s, false)) currNumOfBlock++;
 
-        for (int i = 0; i < grid.size(); i++) {
-            if (i == 2) continue;
-            for (int j = 0; j < grid.size(); j++) {
-                if (!grid.get(i)[j].equals("*")) continue;
-                String fillOrNot = randomBinaryChoice("yes", "no", fillInProb);
+        for (int i = 0; i < this.gridSize; i++) {
+            if (i == this.exitRow) continue;
+            for (int j = 0; j < this.gridSize; j++) {
+                if (!gb.isEmptyCell(i, j)) continue;
+                String fillOrNot = randomBinaryChoice("yes", "no", h.fillInProb);
                 if (fillOrNot.equals("no")) continue;
                 String id = Character.toString((char) (97 + currNumOfBlock));
                 boolean[] isHorizontal = {true, false};
                 int[] size = {2, 3};
                 int isHorizontalIdx = randomBinaryChoice(0, 1, 0.5);
-                int sizeIdx = randomBinaryChoice(0, 1, sizeTwoProb);
+                int sizeIdx = randomBinaryChoice(0, 1, h.sizeTwoProb);
                 currNumOfBlock++;
                 if (gb.setBlock(id, i, j, size[sizeIdx], isHorizontal[isHorizontalIdx])) continue;
                 if (gb.setBlock(id, i, j, size[sizeIdx], isHorizontal[1 - isHorizontalIdx])) continue;
@@ -464,9 +488,31 @@ public class GameBoardGenerator implements Runnable {
                 currNumOfBlock--;
             }
         }
-        grid.get(2)[3] = "*";
-        return (currNumOfBlock >= minBlocks && currNumOfBlock <= maxBlocks)
-                ? gb : newEndGameBoard();
+        gb.setBlockedCell(this.exitRow, this.gridSize - 3, false);
+        return (currNumOfBlock >= h.minBlocks && currNumOfBlock <= h.maxBlocks)
+                ? gb : newEndGameBoard(h);
+    }
+
+    /**
+     * Generate a random block-set for a difficulty, for the exhaustive search of RetrogradeEnumerator
+     * @param d the level difficulty
+     * @return an end game-board with the number of blocks of the difficulty
+     */
+    GameBoard newBlockSet(Difficulty d) {
+        return newEndGameBoard(new Heuristics(d, this.gridSize));
+    }
+
+    /**
+     * Grade a puzzle by its number of moves, with the same limits as generateGameBoard
+     * @param numMoves the distance from the puzzle to an end game-board
+     * @return the hardest difficulty the puzzle has enough moves for, null if it has too few for any
+     */
+    Difficulty getDifficulty(int numMoves) {
+        Difficulty[] levels = Difficulty.values();
+        for (int i = levels.length - 1; i >= 0; i--) {
+            if (new Heuristics(levels[i], this.gridSize).minMoves <= numMoves) return levels[i];
+        }
+        return null;
     }
 
     /** (Private)
@@ -481,18 +527,20 @@ public class GameBoardGenerator implements Runnable {
         return (Math.random() < probItem1) ? item1 : item2;
     }
 
-    /** (Private)
+    /**
      * Generate a single starting game board for a particular difficulty.
      * Initially it presets the information related to difficulty such as min and max number of moves.
      * Then this function performs BFS from the list given by newEndGameBoardList, which guarantees
      * that a BFS starting from this list will give a correct interpretation that a recorded
      * distance in a visited node X - IS - the minimal number of moves needed from X's game-board
      * configuration to an end game-board.
-     * @return a starting game-board
+     * Safe to call from several threads at once (see PuzzlePack).
+     * @param d the level difficulty
+     * @return a starting game-board, null if none was found or the generation was aborted
      */
-    private GameBoard generateGameBoard(Difficulty d) {
-        initHeuristics (d);
-        List <GameBoard> initWinBoardList = newEndGameBoardList();
+    GameBoard generateGameBoard(Difficulty d) {
+        Heuristics h = new Heuristics(d, this.gridSize);
+        List <GameBoard> initWinBoardList = newEndGameBoardList(h);
         if (initWinBoardList == null) return null;
 
         // For BFS to store pred and distance variables properly, every node's neighbors should
@@ -520,9 +568,11 @@ public class GameBoardGenerator implements Runnable {
         Map <List <Node>, Node> adjacencyRefBA = new IdentityHashMap<>(30000);
         Node initWinNode;
         List <Node> newNeighborList;
+        // every end game-board has the same blocks on the same rows/cols, so they share one layout
+        BoardLayout layout = new BoardLayout(initWinBoardList.get(0).getBlocks(), this.gridSize);
 
         for (GameBoard initWinBoard: initWinBoardList) {
-            initWinNode = new Node (initWinBoard);
+            initWinNode = new Node (BoardSnapshot.of(layout, initWinBoard));
             initWinNode.dist = 0;
             newNeighborList = new ArrayList<>();
             adjacency.put(initWinNode, newNeighborList);
@@ -533,7 +583,7 @@ public class GameBoardGenerator implements Runnable {
         while (!queue.isEmpty()) {
             Node curr = queue.poll();
             // Ensuring we only want to explore up to a distance of maxMoves
-            if (curr.dist > maxMoves) break;
+            if (curr.dist > h.maxMoves) break;
             for (Node neighNode : curr.produceNeighborNodes()) {
                 // Check for abort request
                 if (threadAbortRequest) return null;
@@ -565,9 +615,7 @@ public class GameBoardGenerator implements Runnable {
         // If the numOfMoves exceeds the maxMoves limit (e.g. easy/medium level), we can drop the puzzle
         // difficulty by one step by referring to its predecessor (which has numOfMoves-1 steps).
         Node maxNode = queueRecordList.get(queueRecordList.size()-1);
-        // Since prevLoc traces may exist, we return the duplicate instead
-        GameBoard result = maxNode.board.duplicateBoard();
-        return (minMoves <= maxNode.dist) ? result : null;
+        return (h.minMoves <= maxNode.dist) ? maxNode.board.toGameBoard() : null;
     }
 
     /** (Private)
@@ -584,100 +632,137 @@ public class GameBoardGenerator implements Runnable {
     }
 
     /** (Private)
-     * Try to generate a medium puzzle and if not null, add it in the ArrayList of medium puzzles
+     * Pause the workers of GameBoardGen: abort the puzzles they are generating and wait until they all
+     * stopped. Pauses nest, the workers go on once every pause is resumed.
+     * The abort request is cleared before returning, as the caller generates with the same checks;
+     * the workers stay put on pauses > 0.
      */
-    private void addMedium() {
+    private void pauseThread () {
+        this.lock.lock();
         try {
-            GameBoard med = generateGameBoard(Difficulty.MEDIUM);
-            this.lock.lock();
-            if (med != null) {
-                this.medium.add(med);
-            } else {
-            }
+            this.pauses++;
+            if (this.busyWorkers == 0) return;
+            this.threadAbortRequest = true;
+            while (this.busyWorkers > 0) this.changed.awaitUninterruptibly();
+            this.threadAbortRequest = false;
         } finally {
-            if (this.lock.isHeldByCurrentThread()) this.lock.unlock();
+            this.lock.unlock();
         }
     }
 
     /** (Private)
-     * Try to generate a hard puzzle and if not null, add it in the ArrayList of hard puzzles
+     * Resume the workers of GameBoardGen, without waiting for them to start
      */
-    private void addHard() {
+    private void resumeThread() {
+        this.lock.lock();
         try {
-            GameBoard h = generateGameBoard(Difficulty.HARD);
-            this.lock.lock();
-            if (h != null) {
-                this.hard.add(h);
-            } else {
-            }
+            if (--this.pauses == 0) this.changed.signalAll();
         } finally {
-            if (this.lock.isHeldByCurrentThread()) this.lock.unlock();
+            this.lock.unlock();
         }
     }
 
-    /** (Private)
-     * Pause the thread of GameBoardGen
-     */
-    private void pauseThread () {
-        if (!this.threadResume) return;
-        this.threadAbortRequest = true;
-        this.threadResume = false;
-        while (isUsed) toSleep(100);
-        this.threadAbortRequest = false;
-    }
-
-    /** (Private)
-     * Resume the thread of GameBoardGen
+    /**
+     * The method called for multithreading: runs the pool of workers, this thread being the first of them.
+     * There is a maximum of STOCK_SIZE puzzles in each medium and hard puzzle stocks.
      */
-    private void resumeThread() {
-        if (this.threadResume) return;
-        while (isUsed) toSleep(100);
-        this.threadResume = true;
-        while (!isUsed) toSleep(100);
+    @Override
+    public void run() {
+        loadStock();
+        this.lock.lock();
+        try {
+            this.threadRun = true;
+            this.threads.add(Thread.currentThread());
+            for (int i = 1; i < this.workers; i++) {
+                Thread worker = new Thread(this::work, "GameBoardGenerator-" + i);
+                worker.setDaemon(true);
+                this.threads.add(worker);
+                worker.start();
+            }
+        } finally {
+            this.lock.unlock();
+        }
+        work();
     }
 
     /** (Private)
-     * Sleep while taking too-simple care of sleep (long millis) command.
-     * @param millis the number of milliseconds
+     * Fill the stocks with the puzzles of the store left from previous runs; those that do not fit
+     * stay in the store for later
      */
-    private void toSleep (long millis) {
-        try {
-            sleep (millis);
-        } catch (InterruptedException e) {
-            System.out.println("InterruptedException issue: " + e.getMessage());
+    private void loadStock() {
+        if (this.store == null) return;
+        for (GameBoard gb : this.store.load(Difficulty.MEDIUM, this.gridSize, this.exitRow)) {
+            if (!this.medium.offer(gb)) break;
+        }
+        for (GameBoard gb : this.store.load(Difficulty.HARD, this.gridSize, this.exitRow)) {
+            if (!this.hard.offer(gb)) break;
         }
     }
 
-    /**
-     * The method called for multithreading. There should be a maximum of 16 puzzles in each
-     * medium and hard puzzle stocks.
+    /** (Private)
+     * The loop of one worker: fill the medium and hard stocks at random, preferring one with room.
+     * While the generator is paused the worker waits on the condition; with a puzzle for a full stock
+     * it parks on put until a consumer takes one. Either way it uses no cpu.
      */
-    @Override
-    public void run() {
-        this.threadRun = true;
-        this.threadResume = true;
-        while (this.threadRun) {
-            isUsed = false;
-            while (!this.threadResume) toSleep(100);
-            isUsed = true;
-            while (this.threadResume) {
-                Random random = new Random();
-                int num = random.nextInt(19999);
-                if (0 <= num && num <= 9999 && this.medium.size() <= 15) {
-                    addMedium();
-                } else if (this.hard.size() <= 15) {
-                    addHard();
+    private void work() {
+        Random random = new Random();
+        while (true) {
+            boolean isMedium;
+            this.lock.lock();
+            try {
+                while (this.threadRun && this.pauses > 0) this.changed.await();
+                if (!this.threadRun) return;
+                boolean mediumFull = this.medium.remainingCapacity() == 0;
+                boolean hardFull = this.hard.remainingCapacity() == 0;
+                isMedium = mediumFull == hardFull ? random.nextBoolean() : hardFull;
+                this.busyWorkers++;
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                this.lock.unlock();
+            }
+            GameBoard gb;
+            try {
+                gb = generateGameBoard(isMedium ? Difficulty.MEDIUM : Difficulty.HARD);
+            } finally {
+                this.lock.lock();
+                try {
+                    this.busyWorkers--;
+                    this.changed.signalAll();
+                } finally {
+                    this.lock.unlock();
                 }
             }
+            if (gb == null) continue;
+            // solved here rather than by the consumer, and stored before it may wait in put;
+            // stopThread interrupts the solve, which then leaves the min moves unset
+            SolverBudget budget = new SolverBudget();
+            gb.getHint(true, budget);
+            if (budget.isCancelled() || Thread.currentThread().isInterrupted()) return;
+            // no more than a stock, so a puzzle parked in put at the end of every session never piles up
+            if (this.store != null) this.store.add(isMedium ? Difficulty.MEDIUM : Difficulty.HARD, gb, STOCK_SIZE);
+            try {
+                (isMedium ? this.medium : this.hard).put(gb);
+            } catch (InterruptedException e) {
+                return;
+            }
         }
     }
 
     /**
-     * Stop the thread of GameBoardGen
+     * Stop the thread of GameBoardGen: the workers return once the puzzle they are generating is done,
+     * or at once if they are waiting
      */
     public void stopThread() {
-        this.threadRun = false;
-        this.threadResume = false;
+        this.lock.lock();
+        try {
+            this.threadRun = false;
+            this.changed.signalAll();
+            for (Thread worker : this.threads) worker.interrupt();
+            this.threads.clear();
+        } finally {
+            this.lock.unlock();
+        }
     }
 
 }
@@ -0,0 +1,428 @@
+package gridlock.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * the HeuristicSolver Class, an informed search engine for the hint functionality
+ * It runs A* and, once its table holds more than memoryLimit states (or straight away when
+ * memoryLimit is 0), drops it and switches to IDA* with a fixed-size transposition table,
+ * so memory never grows past the larger of the two. Both are guided by an
+ * admissible heuristic, so getNumMoves is still optimal:
+ * 1 move for the red car, plus 1 per block standing between it and the exit,
+ * plus the most blocks that any one of those blockers needs moved out of its way first.
+ * Like BoardSolver it keeps its last solution, so after reroot to a board state on that solution
+ * the next solvePuzzle is answered without a search.
+ */
+class HeuristicSolver implements Solver {
+	private static final int INFINITE = Integer.MAX_VALUE / 2;
+	// returned by the searches when the budget runs out
+	private static final int STOPPED = Integer.MIN_VALUE;
+	private static final int MAX_DEPTH = 255;
+	private static final int TABLE_LIMIT = 1 << 20;
+
+	private BoardLayout layout;
+	private byte[] start;
+	private int memoryLimit;
+	private int numMoves;
+	private ArrayList<Block> path;
+	private StateTable pathStates;
+	private int step;
+	private long[] corridors;
+	private SolverBudget budget = new SolverBudget();
+	private boolean stopped;
+
+	// IDA* search state
+	private StateTable table;
+	private int[] tableDepths;
+	private int[] moves;
+	private int[][] moveBuffers;
+
+	/**
+	 * Class constructor for HeuristicSolver, using A* with no memory bound
+	 * @param blocks the list of blocks
+	 * @param gridSize the length of the (square) grid
+	 */
+	public HeuristicSolver(List<Block> blocks, int gridSize) {
+		this(blocks, gridSize, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Class constructor for HeuristicSolver
+	 * @param blocks the list of blocks
+	 * @param gridSize the length of the (square) grid
+	 * @param memoryLimit the number of states A* may keep before switching to IDA*, 0 for IDA* only
+	 */
+	public HeuristicSolver(List<Block> blocks, int gridSize, int memoryLimit) {
+		this.layout = new BoardLayout(blocks, gridSize);
+		this.start = this.layout.getOffsets(blocks);
+		this.memoryLimit = memoryLimit;
+		// corridors[o]: the cells the red car still has to cross from offset o
+		int goal = this.layout.getGoalBlock();
+		if (goal != -1) {
+			int maxOffset = this.layout.getMaxOffset(goal);
+			this.corridors = new long[maxOffset + 1];
+			for (int offset = maxOffset; offset >= 0; offset--) {
+				long swept = this.layout.getMask(goal, offset);
+				for (int o = offset + 1; o <= maxOffset; o++) swept |= this.layout.getMask(goal, o);
+				this.corridors[offset] = swept & ~this.layout.getMask(goal, offset);
+			}
+		}
+	}
+
+	@Override
+	public ArrayList<Block> solve() {
+		solvePuzzle();
+		return getPath();
+	}
+
+	@Override
+	public Block getHint() {
+		return solvePuzzle();
+	}
+
+	@Override
+	public int getDistance() {
+		solvePuzzle();
+		return this.path == null ? -1 : this.numMoves;
+	}
+
+	@Override
+	public void setBudget(SolverBudget budget) {
+		this.budget = budget;
+	}
+
+	@Override
+	public boolean isStopped() {
+		return this.stopped;
+	}
+
+	@Override
+	public boolean reroot(List<Block> blocks) {
+		byte[] offsets = this.layout.getOffsets(blocks);
+		this.start = offsets;
+		if (this.pathStates != null) {
+			int index = this.pathStates.indexOf(this.layout.packLow(offsets), this.layout.packHigh(offsets));
+			if (index != -1) {
+				this.step = index;
+				this.numMoves = this.path.size() - index;
+				return true;
+			}
+		}
+		this.path = null;
+		this.pathStates = null;
+		return false;
+	}
+
+	/**
+	 * search for an optimal solution of the board
+	 * @return the block that is to be moved next, in its new position,
+	 * or null if the board is already solved or cannot be solved
+	 */
+	public Block solvePuzzle() {
+		if (this.path != null) {
+			return this.step < this.path.size() ? this.path.get(this.step) : null;
+		}
+		this.stopped = false;
+		byte[] offsets = this.start.clone();
+		int bound = heuristic(offsets, this.layout.getOccupancy(offsets));
+		if (bound >= INFINITE) return null;
+		if (this.memoryLimit > 0) {
+			bound = solveAStar();
+			if (this.path != null) return this.path.isEmpty() ? null : this.path.get(0);
+			this.stopped = bound == STOPPED;
+			if (this.stopped || bound >= INFINITE) return null;
+		}
+		solveIDAStar(bound);
+		return this.path == null || this.path.isEmpty() ? null : this.path.get(0);
+	}
+
+	/**
+	 * get the number of moves of the solution found by solvePuzzle
+	 * @return the number of moves to the end board state
+	 */
+	public int getNumMoves() {
+		return this.numMoves;
+	}
+
+	/**
+	 * get every move left on the last solution found by solvePuzzle
+	 * @return the blocks moved, each in its new position, in playing order
+	 */
+	public ArrayList<Block> getPath() {
+		return this.path == null ? null : new ArrayList<>(this.path.subList(this.step, this.path.size()));
+	}
+
+	/** (Private)
+	 * A* over the packed states. Open states sit in a binary heap of longs holding
+	 * (f, MAX_DEPTH - g, index), so ties on f go to the deepest state; stale heap entries are skipped.
+	 * @return INFINITE if there is no solution, STOPPED if the budget ran out, otherwise the smallest
+	 * f left open when the memory limit was hit (a lower bound for IDA*); this.path is set if a
+	 * solution was found
+	 */
+	private int solveAStar() {
+		StateTable states = new StateTable(1 << 12);
+		int[] depths = new int[1 << 12];
+		int[] parents = new int[1 << 12];
+		int[] estimates = new int[1 << 12];
+		long[] heap = new long[1 << 12];
+		int heapSize = 0;
+
+		byte[] offsets = this.start.clone();
+		int[] moves = new int[this.layout.getMoveCapacity()];
+		states.add(this.layout.packLow(offsets), this.layout.packHigh(offsets));
+		parents[0] = -1;
+		estimates[0] = heuristic(offsets, this.layout.getOccupancy(offsets));
+		heap[heapSize++] = heapKey(estimates[0], 0, 0);
+		while (heapSize > 0) {
+			long top = heap[0];
+			heap[0] = heap[--heapSize];
+			siftDown(heap, heapSize, 0);
+			int index = (int) top;
+			int f = (int) (top >>> 40);
+			if (f != depths[index] + estimates[index]) continue;
+			if (states.size() > this.memoryLimit) return f;
+
+			long low = states.getLow(index);
+			long high = states.getHigh(index);
+			this.layout.unpack(low, high, offsets);
+			if (this.layout.isGoal(offsets)) {
+				ArrayList<byte[]> solution = new ArrayList<>();
+				for (int i = index; i != -1; i = parents[i]) {
+					byte[] state = new byte[offsets.length];
+					this.layout.unpack(states.getLow(i), states.getHigh(i), state);
+					solution.add(0, state);
+				}
+				keepSolution(solution);
+				return f;
+			}
+			if (!this.budget.spend(1)) return STOPPED;
+			long occupancy = this.layout.getOccupancy(offsets);
+			int depth = depths[index] + 1;
+			int count = this.layout.getMoves(offsets, occupancy, moves);
+			for (int i = 0; i < count; i++) {
+				int added = states.add(this.layout.packLow(low, offsets, moves[i]), this.layout.packHigh(high, offsets, moves[i]));
+				long newOccupancy = this.layout.applyMove(offsets, occupancy, moves[i]);
+				int next;
+				if (added >= 0) {
+					next = added;
+					if (next == depths.length) {
+						depths = Arrays.copyOf(depths, next * 2);
+						parents = Arrays.copyOf(parents, next * 2);
+						estimates = Arrays.copyOf(estimates, next * 2);
+					}
+					estimates[next] = heuristic(offsets, newOccupancy);
+				} else {
+					// the heuristic may be inconsistent, so a closed state can still be reopened
+					next = -added - 1;
+				}
+				this.layout.undoMove(offsets, occupancy, moves[i]);
+				if (estimates[next] >= INFINITE) {
+					if (added >= 0) depths[next] = INFINITE;
+					continue;
+				}
+				if (added < 0 && depths[next] <= depth) continue;
+				depths[next] = depth;
+				parents[next] = index;
+				if (heapSize == heap.length) heap = Arrays.copyOf(heap, heapSize * 2);
+				heap[heapSize] = heapKey(depth + estimates[next], depth, next);
+				siftUp(heap, heapSize++);
+			}
+		}
+		return INFINITE;
+	}
+
+	/** (Private)
+	 * IDA*: depth-first searches with a growing bound on f. A transposition table
+	 * (cleared every iteration, at most TABLE_LIMIT states) cuts states
+	 * already reached at the same or a smaller depth.
+	 * @param bound the first bound on f
+	 */
+	private void solveIDAStar(int bound) {
+		this.moves = new int[MAX_DEPTH];
+		this.moveBuffers = new int[MAX_DEPTH][];
+		byte[] offsets = this.start.clone();
+		long occupancy = this.layout.getOccupancy(offsets);
+		while (bound < MAX_DEPTH) {
+			this.table = new StateTable(1 << 12);
+			this.tableDepths = new int[1 << 12];
+			int next = search(offsets, occupancy, this.layout.packLow(offsets), this.layout.packHigh(offsets), 0, bound);
+			if (next == STOPPED) {
+				this.stopped = true;
+				break;
+			}
+			if (next < 0) {
+				ArrayList<byte[]> solution = new ArrayList<>();
+				byte[] state = this.start.clone();
+				solution.add(state.clone());
+				for (int depth = 0; depth < -next - 1; depth++) {
+					this.layout.applyMove(state, 0L, this.moves[depth]);
+					solution.add(state.clone());
+				}
+				keepSolution(solution);
+				break;
+			}
+			if (next >= INFINITE) break;
+			bound = next;
+		}
+		this.table = null;
+		this.tableDepths = null;
+		this.moveBuffers = null;
+	}
+
+	/** (Private)
+	 * one bounded depth-first search, moving blocks in place and undoing them
+	 * @param offsets the offset of every block, restored on return
+	 * @param occupancy the occupied cells
+	 * @param low the low word of the packed state
+	 * @param high the high word of the packed state
+	 * @param depth the number of moves made so far
+	 * @param bound the largest f to explore
+	 * @return -(depth + 1) of the solution if one was found, STOPPED if the budget ran out,
+	 * otherwise the smallest f over the bound
+	 */
+	private int search(byte[] offsets, long occupancy, long low, long high, int depth, int bound) {
+		int f = depth + heuristic(offsets, occupancy);
+		if (f > bound) return f;
+		if (this.layout.isGoal(offsets)) return -(depth + 1);
+		int index = this.table.indexOf(low, high);
+		if (index != -1) {
+			if (this.tableDepths[index] <= depth) return INFINITE;
+			this.tableDepths[index] = depth;
+		} else if (this.table.size() < TABLE_LIMIT) {
+			index = this.table.add(low, high);
+			if (index == this.tableDepths.length) this.tableDepths = Arrays.copyOf(this.tableDepths, index * 2);
+			this.tableDepths[index] = depth;
+		}
+		if (!this.budget.spend(1)) return STOPPED;
+		int min = INFINITE;
+		if (this.moveBuffers[depth] == null) this.moveBuffers[depth] = new int[this.layout.getMoveCapacity()];
+		int[] buffer = this.moveBuffers[depth];
+		int count = this.layout.getMoves(offsets, occupancy, buffer);
+		for (int i = 0; i < count; i++) {
+			this.moves[depth] = buffer[i];
+			long nextLow = this.layout.packLow(low, offsets, buffer[i]);
+			long nextHigh = this.layout.packHigh(high, offsets, buffer[i]);
+			int result = search(offsets, this.layout.applyMove(offsets, occupancy, buffer[i]), nextLow, nextHigh,
+					depth + 1, bound);
+			this.layout.undoMove(offsets, occupancy, buffer[i]);
+			// a solution, or STOPPED
+			if (result < 0) return result;
+			min = Math.min(min, result);
+		}
+		return min;
+	}
+
+	/** (Private)
+	 * admissible estimate of the number of moves left
+	 * @param offsets the offset of every block
+	 * @param occupancy the occupied cells
+	 * @return a lower bound on the moves to the end board state, INFINITE if it cannot be reached
+	 */
+	private int heuristic(byte[] offsets, long occupancy) {
+		int goal = this.layout.getGoalBlock();
+		if (goal == -1) return INFINITE;
+		if (offsets[goal] == this.layout.getMaxOffset(goal)) return 0;
+		long corridor = this.corridors[offsets[goal]];
+		if ((occupancy & corridor) == 0) return 1;
+		int blockers = 0;
+		int blockersOfBlockers = 0;
+		for (int block = 0; block < offsets.length; block++) {
+			if ((this.layout.getMask(block, offsets[block]) & corridor) == 0) continue;
+			// a block sliding along the red car's row can never get out of the way
+			if (this.layout.isHorizontal(block)) return INFINITE;
+			blockers++;
+			int needed = Math.min(clearingCost(offsets, occupancy, block, corridor, -1),
+					clearingCost(offsets, occupancy, block, corridor, 1));
+			if (needed >= INFINITE) return INFINITE;
+			blockersOfBlockers = Math.max(blockersOfBlockers, needed);
+		}
+		return 1 + blockers + blockersOfBlockers;
+	}
+
+	/** (Private)
+	 * count the blocks that must move before a blocker can leave the red car's way in one direction
+	 * @param offsets the offset of every block
+	 * @param occupancy the occupied cells
+	 * @param block the index of the blocker
+	 * @param corridor the cells the red car still has to cross
+	 * @param step -1 to clear upwards/leftwards, 1 downwards/rightwards
+	 * @return the number of other blocks in the way, INFINITE if a wall is in the way
+	 */
+	private int clearingCost(byte[] offsets, long occupancy, int block, long corridor, int step) {
+		int offset = offsets[block];
+		long own = this.layout.getMask(block, offset);
+		long swept = 0L;
+		int target = offset;
+		do {
+			target += step;
+			if (target < 0 || target > this.layout.getMaxOffset(block)) return INFINITE;
+			swept |= this.layout.getMask(block, target);
+		} while ((this.layout.getMask(block, target) & corridor) != 0);
+		swept &= ~own & occupancy;
+		if (swept == 0) return 0;
+		int count = 0;
+		for (int other = 0; other < offsets.length; other++) {
+			if (other != block && (this.layout.getMask(other, offsets[other]) & swept) != 0) count++;
+		}
+		return count;
+	}
+
+	/** (Private)
+	 * keep the moves and board states of a solution
+	 * @param states the offsets of every board state on the solution, from the start
+	 */
+	private void keepSolution(ArrayList<byte[]> states) {
+		this.path = this.layout.toMoves(states);
+		this.pathStates = new StateTable(states.size());
+		// index i of pathStates is the state after i moves
+		for (byte[] curr : states) this.pathStates.add(this.layout.packLow(curr), this.layout.packHigh(curr));
+		this.step = 0;
+		this.numMoves = this.path.size();
+	}
+
+	/** (Private)
+	 * pack a heap entry so that smaller longs come out first
+	 * @param f the estimated total number of moves
+	 * @param depth the number of moves made so far
+	 * @param index the index of the state
+	 * @return the heap entry
+	 */
+	private static long heapKey(int f, int depth, int index) {
+		return ((long) f << 40) | ((long) (MAX_DEPTH - Math.min(depth, MAX_DEPTH)) << 32) | index;
+	}
+
+	/** (Private)
+	 * restore the heap order upwards from an entry
+	 * @param heap the heap
+	 * @param i the index of the entry
+	 */
+	private static void siftUp(long[] heap, int i) {
+		long entry = heap[i];
+		while (i > 0 && heap[(i - 1) / 2] > entry) {
+			heap[i] = heap[(i - 1) / 2];
+			i = (i - 1) / 2;
+		}
+		heap[i] = entry;
+	}
+
+	/** (Private)
+	 * restore the heap order downwards from an entry
+	 * @param heap the heap
+	 * @param size the number of entries in the heap
+	 * @param i the index of the entry
+	 */
+	private static void siftDown(long[] heap, int size, int i) {
+		if (size == 0) return;
+		long entry = heap[i];
+		while (2 * i + 1 < size) {
+			int child = 2 * i + 1;
+			if (child + 1 < size && heap[child + 1] < heap[child]) child++;
+			if (heap[child] >= entry) break;
+			heap[i] = heap[child];
+			i = child;
+		}
+		heap[i] = entry;
+	}
+}
@@ -0,0 +1,66 @@
+package gridlock.model;
+
+/**
+ * Move class designed to store one step of a solution:
+ * the block that slides, and its starting [row,col] before and after the slide
+ */
+public class Move {
+
+    private String id;
+    private Integer[] from;
+    private Integer[] to;
+
+    /**
+     * Move class constructor
+     * @param id the id of the block
+     * @param from the starting [row,col] of the block before the move
+     * @param to the starting [row,col] of the block after the move
+     */
+    public Move(String id, Integer[] from, Integer[] to) {
+        this.id = id;
+        this.from = from.clone();
+        this.to = to.clone();
+    }
+
+    /**
+     * get the ID of the block that moves
+     * @return the id of the block
+     */
+    public String getID() {
+        return this.id;
+    }
+
+    /**
+     * get the starting position of the block before the move
+     * @return a copy of the [row,col] before the move
+     */
+    public Integer[] getFrom() {
+        return this.from.clone();
+    }
+
+    /**
+     * get the starting position of the block after the move
+     * @return a copy of the [row,col] after the move
+     */
+    public Integer[] getTo() {
+        return this.to.clone();
+    }
+
+    /**
+     * check if a block slide is this move
+     * @param id the id of the block
+     * @param from the starting [row,col] before the slide
+     * @param to the starting [row,col] after the slide
+     * @return true if the slide is the same move
+     */
+    public boolean matches(String id, Integer[] from, Integer[] to) {
+        return this.id.equals(id)
+                && this.from[0].equals(from[0]) && this.from[1].equals(from[1])
+                && this.to[0].equals(to[0]) && this.to[1].equals(to[1]);
+    }
+
+    @Override
+    public String toString() {
+        return this.id + ": [" + this.from[0] + "," + this.from[1] + "] -> [" + this.to[0] + "," + this.to[1] + "]";
+    }
+}
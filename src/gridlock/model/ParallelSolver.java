@@ -0,0 +1,25 @@
+package gridlock.model;
+
+import java.util.ArrayList;
+
+/**
+ * the ParallelSolver Class, a BoardSolver that expands large BFS layers on every core
+ * Every answer comes from solvePuzzleParallel, which finds the same solution as the plain bfs;
+ * it keeps the solution retention of BoardSolver.
+ */
+class ParallelSolver extends BoardSolver {
+
+	/**
+	 * Class constructor for ParallelSolver
+	 * @param blocks the list of blocks
+	 * @param gridSize the length of the (square) grid
+	 */
+	public ParallelSolver(ArrayList<Block> blocks, int gridSize) {
+		super(blocks, gridSize);
+	}
+
+	@Override
+	public Block solvePuzzle() {
+		return solvePuzzleParallel();
+	}
+}
@@ -0,0 +1,220 @@
+package gridlock.model;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * PuzzlePack builds a pack of generated puzzles from the command line, without the game, e.g. on a build box:
+ *
+ *     java -cp bin gridlock.model.PuzzlePack pack.txt [--minutes N] [--puzzles N] [--size N] [--exit N] [--threads N]
+ *         [--exhaustive]
+ *
+ * Every core runs GameBoardGenerator.generateGameBoard for MEDIUM and HARD puzzles in turn until the time or the
+ * number of puzzles runs out (1 minute by default). With --exhaustive every core enumerates whole random block-sets
+ * instead, keeping the hardest puzzles of each component graded by their exact number of moves. Puzzles are deduplicated by BoardCode, and written grouped by
+ * difficulty, hardest first, in the format of PuzzleStore: a pack copied to puzzles.txt fills the sandbox stocks.
+ */
+public class PuzzlePack {
+    private static final Difficulty[] DIFFICULTIES = {Difficulty.MEDIUM, Difficulty.HARD};
+
+    // largest number of board states an exhaustive search of one block-set may take
+    private static final int STATE_LIMIT = 1 << 22;
+
+    private final GameBoardGenerator generator;
+    private final boolean exhaustive;
+    private final Map<BoardCode, Entry> puzzles = new ConcurrentHashMap<>();
+    private final AtomicInteger duplicates = new AtomicInteger();
+
+    /** (Private)
+     * Entry class, a puzzle of the pack
+     */
+    private static class Entry {
+        final Difficulty difficulty;
+        final int numMoves;
+        final String line;
+
+        /**
+         * Class constructor for Entry
+         * @param difficulty the level difficulty the puzzle was generated for
+         * @param board the puzzle, with its min moves set
+         */
+        Entry(Difficulty difficulty, GameBoard board) {
+            this.difficulty = difficulty;
+            this.numMoves = board.getMinMoves() + 1;
+            this.line = PuzzleStore.entry(difficulty, board);
+        }
+    }
+
+    /**
+     * Constructor for PuzzlePack
+     * @param gridSize the length of the (square) grid of the puzzles
+     * @param exitRow the row with the exit on its right
+     * @param exhaustive true to take the hardest puzzles of every component of random block-sets
+     *                   (see RetrogradeEnumerator) rather than one puzzle per generateGameBoard
+     */
+    public PuzzlePack(int gridSize, int exitRow, boolean exhaustive) {
+        this.generator = new GameBoardGenerator(gridSize, exitRow, 1, null);
+        this.exhaustive = exhaustive;
+    }
+
+    /**
+     * generate puzzles on several threads until the time or the number of puzzles runs out
+     * @param threads the number of threads
+     * @param millis the time to generate for, 0 for no limit
+     * @param maxPuzzles the number of distinct puzzles wanted, shared evenly by the difficulties, 0 for no limit
+     * @throws InterruptedException if the calling thread is interrupted while waiting
+     */
+    public void generate(int threads, long millis, int maxPuzzles) throws InterruptedException {
+        long deadline = millis > 0 ? System.currentTimeMillis() + millis : Long.MAX_VALUE;
+        // HARD puzzles take longer, so each difficulty gets its own share rather than the first to fill the pack
+        int share = maxPuzzles > 0 ? (maxPuzzles + DIFFICULTIES.length - 1) / DIFFICULTIES.length : Integer.MAX_VALUE;
+        Map<Difficulty, AtomicInteger> counts = new EnumMap<>(Difficulty.class);
+        for (Difficulty d : DIFFICULTIES) counts.put(d, new AtomicInteger());
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            final int first = i;
+            workers[i] = new Thread(() -> {
+                int full = 0;
+                for (int n = first; System.currentTimeMillis() < deadline && full < DIFFICULTIES.length; n++) {
+                    Difficulty d = DIFFICULTIES[n % DIFFICULTIES.length];
+                    if (counts.get(d).get() >= share) {
+                        full++;
+                        continue;
+                    }
+                    full = 0;
+                    if (!this.exhaustive) {
+                        GameBoard board = this.generator.generateGameBoard(d);
+                        if (board != null) offer(d, board, 0, counts, share);
+                        continue;
+                    }
+                    long left = millis > 0 ? Math.max(1, deadline - System.currentTimeMillis()) : 0;
+                    List<RetrogradeEnumerator.Component> components = new RetrogradeEnumerator(this.generator.newBlockSet(d))
+                            .enumerate(new SolverBudget(left, 2L * STATE_LIMIT));
+                    if (components == null) continue;
+                    // the hardest states of a component are a few moves of each other, one of them is enough
+                    for (RetrogradeEnumerator.Component component : components) {
+                        Difficulty grade = this.generator.getDifficulty(component.getDepth());
+                        if (!counts.containsKey(grade)) break;
+                        offer(grade, component.getHardest().get(0), component.getDepth(), counts, share);
+                    }
+                }
+            }, "PuzzlePack-" + i);
+            workers[i].start();
+        }
+        for (Thread worker : workers) worker.join();
+    }
+
+    /** (Private)
+     * add a puzzle to the pack, unless it is in already or its difficulty has its share
+     * A place in the share is taken before the puzzle is solved and given back if it is not added,
+     * so workers adding puzzles at the same time never go over the share.
+     * @param d the level difficulty of the puzzle
+     * @param board the puzzle, its min moves not set yet
+     * @param numMoves the number of moves of the puzzle if it is known already, else 0 to solve it
+     * @param counts the number of puzzles of every difficulty so far
+     * @param share the number of puzzles wanted per difficulty
+     */
+    private void offer(Difficulty d, GameBoard board, int numMoves, Map<Difficulty, AtomicInteger> counts, int share) {
+        AtomicInteger count = counts.get(d);
+        if (count.incrementAndGet() > share) {
+            count.decrementAndGet();
+            return;
+        }
+        BoardCode code = BoardCode.encode(board);
+        if (code == null || this.puzzles.containsKey(code)) {
+            count.decrementAndGet();
+            this.duplicates.incrementAndGet();
+            return;
+        }
+        if (numMoves > 0) board.setMinMoves(numMoves - 1);
+        else board.setMinMoves();
+        if (this.puzzles.putIfAbsent(code, new Entry(d, board)) != null) {
+            count.decrementAndGet();
+            this.duplicates.incrementAndGet();
+        }
+    }
+
+    /**
+     * write the pack, grouped by difficulty, hardest puzzles first
+     * @param fileName the file to write
+     * @param maxPuzzles the number of puzzles to write, 0 for all
+     * @return the number of puzzles written
+     * @throws IOException if the file cannot be written
+     */
+    public int save(String fileName, int maxPuzzles) throws IOException {
+        Map<Difficulty, List<Entry>> buckets = new EnumMap<>(Difficulty.class);
+        for (Difficulty d : DIFFICULTIES) buckets.put(d, new ArrayList<>());
+        for (Entry entry : this.puzzles.values()) buckets.get(entry.difficulty).add(entry);
+        int written = 0;
+        try (PrintWriter writer = new PrintWriter(fileName)) {
+            writer.println("# + <difficulty> <grid size> <exit row> <board code> <number of moves> (see PuzzlePack)");
+            for (Difficulty d : DIFFICULTIES) {
+                List<Entry> bucket = buckets.get(d);
+                bucket.sort(Comparator.comparingInt((Entry e) -> -e.numMoves).thenComparing(e -> e.line));
+                writer.println("# " + d + ": " + bucket.size() + " puzzles");
+                for (Entry entry : bucket) {
+                    if (maxPuzzles > 0 && written == maxPuzzles) break;
+                    writer.println("+ " + entry.line);
+                    written++;
+                }
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Build a puzzle pack, see the class comment for the arguments
+     * @param args the output file, then options
+     * @throws Exception if generating or writing the pack fails
+     */
+    public static void main(String[] args) throws Exception {
+        String usage = "usage: PuzzlePack <file> [--minutes N] [--puzzles N] [--size N] [--exit N] [--threads N]"
+                + " [--exhaustive]";
+        if (args.length == 0) {
+            System.out.println(usage);
+            return;
+        }
+        boolean exhaustive = false;
+        double minutes = 0;
+        int maxPuzzles = 0;
+        int size = Board.DEFAULT_SIZE;
+        int exit = -1;
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--exhaustive")) {
+                exhaustive = true;
+                continue;
+            }
+            if (i + 1 == args.length) {
+                System.out.println(usage);
+                return;
+            }
+            switch (args[i]) {
+                case "--minutes": minutes = Double.parseDouble(args[++i]); break;
+                case "--puzzles": maxPuzzles = Integer.parseInt(args[++i]); break;
+                case "--size": size = Integer.parseInt(args[++i]); break;
+                case "--exit": exit = Integer.parseInt(args[++i]); break;
+                case "--threads": threads = Integer.parseInt(args[++i]); break;
+                default:
+                    System.out.println("unknown option " + args[i]);
+                    return;
+            }
+        }
+        if (minutes <= 0 && maxPuzzles <= 0) minutes = 1;
+        if (exit == -1) exit = size == Board.DEFAULT_SIZE ? Board.DEFAULT_EXIT_ROW : (size - 1) / 2;
+
+        PuzzlePack pack = new PuzzlePack(size, exit, exhaustive);
+        long start = System.currentTimeMillis();
+        pack.generate(Math.max(1, threads), (long) (minutes * 60000), maxPuzzles);
+        int written = pack.save(args[0], maxPuzzles);
+        System.out.println("Saved " + written + " puzzles to " + args[0] + " (" + pack.duplicates.get()
+                + " duplicates dropped, " + (System.currentTimeMillis() - start) / 1000 + "s)");
+    }
+}
@@ -0,0 +1,171 @@
+package gridlock.model;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+
+/**
+ * PuzzleStore keeps the generated puzzles that were not played yet in puzzles.txt, so that the stocks of
+ * GameBoardGenerator survive restarts and no generation work is lost.
+ * The file is a log that is only appended to while the game runs: a "+" line when a puzzle is stocked and
+ * a "-" line when it is taken, each with the difficulty, the grid size, the exit row, the BoardCode and the
+ * number of moves of the puzzle. It is read on first use and written back with the pending puzzles only.
+ */
+public class PuzzleStore {
+    private static final String FILE_NAME = "src/gridlock/resources/puzzles.txt";
+
+    private final String fileName;
+    private ArrayList<String> pending;
+
+    /** (Private)
+     * Holder class so the store is only read the first time it is used
+     */
+    private static class Holder {
+        static final PuzzleStore INSTANCE = new PuzzleStore(FILE_NAME);
+    }
+
+    /**
+     * Constructor for PuzzleStore
+     * @param fileName the file of the store
+     */
+    public PuzzleStore(String fileName) {
+        this.fileName = fileName;
+    }
+
+    /**
+     * get the puzzle store of the game, shared by every generator
+     * @return the shared store
+     */
+    public static PuzzleStore getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * get the pending puzzles of a kind, oldest first
+     * @param d the level difficulty
+     * @param gridSize the length of the (square) grid
+     * @param exitRow the row with the exit on its right
+     * @return new game-boards of the puzzles, with their stored min moves
+     */
+    public synchronized List<GameBoard> load(Difficulty d, int gridSize, int exitRow) {
+        String prefix = key(d, gridSize, exitRow);
+        List<GameBoard> result = new ArrayList<>();
+        for (String line : getPending()) {
+            if (!line.startsWith(prefix)) continue;
+            // <difficulty> <grid size> <exit row> <board code> <number of moves>, damaged lines are skipped
+            String[] fields = line.split(" ");
+            if (fields.length != 5) continue;
+            try {
+                GameBoard board = BoardCode.parse(fields[3]).decode(gridSize, exitRow);
+                if (board == null) continue;
+                board.setMinMoves(Integer.parseInt(fields[4]) - 1);
+                result.add(board);
+            } catch (NumberFormatException e) {
+                // not a puzzle of this store
+            }
+        }
+        return result;
+    }
+
+    /**
+     * add a puzzle to the store, unless it holds enough puzzles of that kind already
+     * @param d the level difficulty
+     * @param board the puzzle, with its min moves set
+     * @param limit the most puzzles of the difficulty, grid size and exit row the store keeps
+     */
+    public synchronized void add(Difficulty d, GameBoard board, int limit) {
+        String line = entry(d, board);
+        if (line == null) return;
+        String prefix = key(d, board.getGridSize(), board.getExitRow());
+        int count = 0;
+        for (String pending : getPending()) {
+            if (pending.startsWith(prefix)) count++;
+        }
+        if (count >= limit) return;
+        this.pending.add(line);
+        append("+ " + line);
+    }
+
+    /**
+     * take a puzzle out of the store, e.g. once it is played
+     * @param d the level difficulty
+     * @param board the puzzle, in its starting position
+     */
+    public synchronized void remove(Difficulty d, GameBoard board) {
+        BoardCode code = BoardCode.encode(board);
+        if (code == null) return;
+        String prefix = key(d, board.getGridSize(), board.getExitRow()) + code + " ";
+        for (int i = 0; i < getPending().size(); i++) {
+            if (this.pending.get(i).startsWith(prefix)) {
+                append("- " + this.pending.remove(i));
+                return;
+            }
+        }
+    }
+
+    /** (Private)
+     * get the pending entries, reading and compacting the file the first time
+     * @return the entries still in the store, oldest first
+     */
+    private List<String> getPending() {
+        if (this.pending != null) return this.pending;
+        this.pending = new ArrayList<>();
+        try (Scanner sc = new Scanner(new File(this.fileName))) {
+            while (sc.hasNextLine()) {
+                String line = sc.nextLine().trim();
+                // + <difficulty> <grid size> <exit row> <board code> <number of moves>
+                if (line.length() < 2) continue;
+                if (line.startsWith("+ ")) this.pending.add(line.substring(2));
+                else if (line.startsWith("- ")) this.pending.remove(line.substring(2));
+            }
+        } catch (FileNotFoundException e) {
+            return this.pending;
+        }
+        try (PrintWriter writer = new PrintWriter(this.fileName)) {
+            for (String line : this.pending) writer.println("+ " + line);
+        } catch (IOException e) {
+            System.out.println("Saving puzzles failed: " + e.getMessage());
+        }
+        return this.pending;
+    }
+
+    /** (Private)
+     * append a line to the file
+     * @param line the line
+     */
+    private void append(String line) {
+        try (PrintWriter writer = new PrintWriter(new FileWriter(this.fileName, true))) {
+            writer.println(line);
+        } catch (IOException e) {
+            System.out.println("Saving puzzles failed: " + e.getMessage());
+        }
+    }
+
+    /** (Private)
+     * the start of the entries of a kind of puzzle
+     * @param d the level difficulty
+     * @param gridSize the length of the (square) grid
+     * @param exitRow the row with the exit on its right
+     * @return the difficulty, grid size and exit row, each followed by a space
+     */
+    private static String key(Difficulty d, int gridSize, int exitRow) {
+        return d + " " + gridSize + " " + exitRow + " ";
+    }
+
+    /**
+     * write the entry of a puzzle, as in the file (without the leading "+ ")
+     * @param d the level difficulty
+     * @param board the puzzle, with its min moves set
+     * @return the entry, null if the board has no BoardCode
+     */
+    static String entry(Difficulty d, GameBoard board) {
+        BoardCode code = BoardCode.encode(board);
+        if (code == null) return null;
+        return key(d, board.getGridSize(), board.getExitRow()) + code + " " + (board.getMinMoves() + 1);
+    }
+}
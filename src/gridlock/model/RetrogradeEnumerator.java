@@ -0,0 +1,164 @@
+package gridlock.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * RetrogradeEnumerator class, the exhaustive counterpart of GameBoardGenerator.generateGameBoard
+ * A block-set is a list of blocks, each with its direction, size and row/col, and the order of the
+ * blocks sharing a row/col (they can never pass each other). The enumerator lists every end board
+ * state of the block-set with BoardLayout.addGoalStates and runs one retrograde bfs from all of them
+ * at once, so every board state that can be solved gets its exact min number of moves. The states
+ * are then split into the connected components of the move graph, and the hardest board states of
+ * every component are kept: the best starting positions that block-set has to offer.
+ */
+final class RetrogradeEnumerator {
+	// more end states than this and the block-set is too loose to give good puzzles anyway
+	private static final int GOAL_LIMIT = 1 << 20;
+	// hardest board states kept per component
+	private static final int HARDEST_LIMIT = 16;
+
+	private final BoardLayout layout;
+	private final byte[] start;
+	private final int exitRow;
+
+	/**
+	 * the Component class, one connected component of the board states of a block-set
+	 */
+	static final class Component {
+		private final int size;
+		private final int depth;
+		private final List<GameBoard> hardest;
+
+		/**
+		 * Class constructor for Component
+		 * @param size the number of board states in the component
+		 * @param depth the min number of moves of the hardest board states
+		 * @param hardest the hardest board states
+		 */
+		private Component(int size, int depth, List<GameBoard> hardest) {
+			this.size = size;
+			this.depth = depth;
+			this.hardest = hardest;
+		}
+
+		/**
+		 * get the number of board states in the component
+		 * @return the size of the component
+		 */
+		int getSize() {
+			return this.size;
+		}
+
+		/**
+		 * get the min number of moves of the hardest board states, as the distances of generateGameBoard
+		 * @return the largest distance to an end board state in the component
+		 */
+		int getDepth() {
+			return this.depth;
+		}
+
+		/**
+		 * get the hardest board states of the component, at most HARDEST_LIMIT of them
+		 * @return new game-boards of the board states at the largest distance, min moves not set
+		 */
+		List<GameBoard> getHardest() {
+			return this.hardest;
+		}
+	}
+
+	/**
+	 * Class constructor for RetrogradeEnumerator
+	 * @param board any board state of the block-set, e.g. an end game-board of the level generator
+	 */
+	RetrogradeEnumerator(GameBoard board) {
+		this.layout = new BoardLayout(board.getBlocks(), board.getGridSize());
+		this.start = this.layout.getOffsets(board.getBlocks());
+		this.exitRow = board.getExitRow();
+	}
+
+	/**
+	 * enumerate the board states of the block-set, deepest components first
+	 * @param budget the budget of the search, every board state is spent twice
+	 * @return the components holding an end board state, null if the budget ran out, there is no
+	 * "z" car or there are more than GOAL_LIMIT end board states
+	 */
+	List<Component> enumerate(SolverBudget budget) {
+		int goal = this.layout.getGoalBlock();
+		if (goal == -1 || !this.layout.isHorizontal(goal) || this.layout.getLine(goal) != this.exitRow) return null;
+		StateTable states = new StateTable(1 << 16);
+		if (!this.layout.addGoalStates(this.start, states, GOAL_LIMIT)) return null;
+		int goals = states.size();
+
+		// retrograde bfs, the dense state indexes are the queue: layer d is [layers[d], layers[d + 1])
+		int[] layers = new int[] {0, goals};
+		byte[] offsets = new byte[this.start.length];
+		int[] moves = new int[this.layout.getMoveCapacity()];
+		for (int depth = 0; layers[depth + 1] > layers[depth]; depth++) {
+			if (!budget.spend(layers[depth + 1] - layers[depth])) return null;
+			for (int index = layers[depth]; index < layers[depth + 1]; index++) {
+				long parentLow = states.getLow(index);
+				long parentHigh = states.getHigh(index);
+				this.layout.unpack(parentLow, parentHigh, offsets);
+				int count = this.layout.getMoves(offsets, this.layout.getOccupancy(offsets), moves);
+				for (int i = 0; i < count; i++) {
+					states.add(this.layout.packLow(parentLow, offsets, moves[i]),
+							this.layout.packHigh(parentHigh, offsets, moves[i]));
+				}
+			}
+			layers = Arrays.copyOf(layers, depth + 3);
+			layers[depth + 2] = states.size();
+		}
+
+		// flood fill the components from the deepest unvisited state, so the first state of each is one of its hardest
+		List<Component> components = new ArrayList<>();
+		BitSet visited = new BitSet(states.size());
+		int[] stack = new int[1 << 12];
+		int depth = layers.length - 2;
+		for (int root = states.size() - 1; root >= 0; root--) {
+			if (visited.get(root)) continue;
+			while (root < layers[depth]) depth--;
+			int size = 0;
+			List<GameBoard> hardest = new ArrayList<>();
+			visited.set(root);
+			stack[0] = root;
+			for (int top = 1; top > 0; ) {
+				int index = stack[--top];
+				size++;
+				long parentLow = states.getLow(index);
+				long parentHigh = states.getHigh(index);
+				this.layout.unpack(parentLow, parentHigh, offsets);
+				if (index >= layers[depth] && hardest.size() < HARDEST_LIMIT) hardest.add(toGameBoard(offsets));
+				int count = this.layout.getMoves(offsets, this.layout.getOccupancy(offsets), moves);
+				for (int i = 0; i < count; i++) {
+					int next = states.indexOf(this.layout.packLow(parentLow, offsets, moves[i]),
+							this.layout.packHigh(parentHigh, offsets, moves[i]));
+					if (visited.get(next)) continue;
+					visited.set(next);
+					if (top == stack.length) stack = Arrays.copyOf(stack, top * 2);
+					stack[top++] = next;
+				}
+			}
+			if (!budget.spend(size)) return null;
+			components.add(new Component(size, depth, hardest));
+		}
+		components.sort((x, y) -> y.depth - x.depth);
+		return components;
+	}
+
+	/** (Private)
+	 * build a playable game-board of a board state
+	 * @param offsets the offset of every block
+	 * @return a new GameBoard, blocks in layout order
+	 */
+	private GameBoard toGameBoard(byte[] offsets) {
+		GameBoard board = new GameBoard(this.layout.getGridSize(), this.exitRow);
+		for (int b = 0; b < offsets.length; b++) {
+			Block block = this.layout.toBlock(b, offsets[b]);
+			board.setBlock(block.getID(), block.getRow(), block.getCol(), this.layout.getSize(b), this.layout.isHorizontal(b));
+		}
+		return board;
+	}
+}
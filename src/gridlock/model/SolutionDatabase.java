@@ -0,0 +1,226 @@
+package gridlock.model;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Scanner;
+
+/**
+ * SolutionDatabase stores the optimal solution of every CAMPAIGN level so that the "Goal" label and
+ * hints on those boards are lookups instead of a solve.
+ * Every board state along a stored solution is indexed by its BoardCode, so a player who keeps
+ * following the optimal line gets each hint in O(1), whatever the block ids. Any other board
+ * (sandbox, or a player who deviated) simply misses and falls back to the solver. The content hash
+ * in the file only tells if a level file changed since the file was written.
+ *
+ * The database is read from solutions.txt on first use; if that file is missing it is rebuilt by
+ * solving all levels once and written back. Run main() to regenerate it at build time.
+ */
+public class SolutionDatabase {
+    private static final String RESOURCES = "src/gridlock/resources/";
+    private static final String FILE_NAME = RESOURCES + "solutions.txt";
+    private static final String[] DIFFICULTIES = {"easy", "medium", "hard"};
+    private static final int LEVELS = 20;
+
+    private HashMap<BoardCode, Step> steps;
+    private ArrayList<String> lines;
+
+    /** (Private)
+     * Step class, a board state found on a stored solution
+     */
+    private static class Step {
+        int numMoves;
+        Move move;
+
+        /**
+         * Class constructor for Step
+         * @param numMoves the number of moves left from this board state
+         * @param move the next move
+         */
+        Step(int numMoves, Move move) {
+            this.numMoves = numMoves;
+            this.move = move;
+        }
+    }
+
+    /** (Private)
+     * Holder class so the database is only loaded the first time it is used
+     */
+    private static class Holder {
+        static final SolutionDatabase INSTANCE = new SolutionDatabase(true);
+    }
+
+    /** (Private)
+     * Constructor for SolutionDatabase: load solutions.txt, or build it if it is missing or out of date
+     * @param useFile false to always rebuild
+     */
+    private SolutionDatabase(boolean useFile) {
+        this.steps = new HashMap<>();
+        this.lines = new ArrayList<>();
+        if (!useFile || !load()) {
+            this.steps.clear();
+            this.lines.clear();
+            build();
+            save();
+        }
+    }
+
+    /**
+     * get the solution database, loading it on first use
+     * @return the shared database
+     */
+    public static SolutionDatabase getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * get the number of moves left from a board state, if it is on a stored solution
+     * @param board the board
+     * @return the number of solver moves left, -1 if the board is not in the database
+     */
+    public int getNumMoves(Board board) {
+        Step step = find(board);
+        return step == null ? -1 : step.numMoves;
+    }
+
+    /**
+     * get the next block to move from a board state, if it is on a stored solution
+     * @param board the board
+     * @return a copy of the next block to move in its new position, null if the board is not in the database
+     */
+    public Block getHint(Board board) {
+        Step step = find(board);
+        if (step == null) return null;
+        // the block of this board that starts where the stored move starts, whatever its id
+        Integer[] from = step.move.getFrom();
+        Block block = board.getBlock(board.getCell(from[0], from[1]) - 1).duplicate();
+        block.setNewPosition(step.move.getTo());
+        return block;
+    }
+
+    /** (Private)
+     * find the step of a board state
+     * @param board the board
+     * @return the step, null if the board is not in the database
+     */
+    private Step find(Board board) {
+        BoardCode code = BoardCode.encode(board);
+        return code == null ? null : this.steps.get(code);
+    }
+
+    /**
+     * hash the content of a grid (FNV-1a over every cell)
+     * @param board the board
+     * @return the hash of the grid
+     */
+    static long contentHash(Board board) {
+        long hash = 0xcbf29ce484222325L;
+        for (int row = 0; row < board.getSize(); row++) {
+            for (int col = 0; col < board.getSize(); col++) {
+                String cell = board.getCellID(row, col);
+                for (int i = 0; i < cell.length(); i++) {
+                    hash = (hash ^ cell.charAt(i)) * 0x100000001b3L;
+                }
+                hash = (hash ^ ' ') * 0x100000001b3L;
+            }
+        }
+        return hash;
+    }
+
+    /** (Private)
+     * read every stored solution from solutions.txt
+     * @return false if the file could not be read, is damaged or a level file changed since it was written
+     */
+    private boolean load() {
+        try (Scanner sc = new Scanner(new File(FILE_NAME))) {
+            while (sc.hasNextLine()) {
+                String line = sc.nextLine().trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                // <content hash> <level file> <number of moves> <id>:<row>,<col> ...
+                String[] tokens = line.split(" ");
+                GameBoard board = new GameBoard();
+                if (!board.read(RESOURCES + tokens[1])) continue;
+                if (contentHash(board.getBoard()) != Long.parseUnsignedLong(tokens[0], 16)) return false;
+                ArrayList<Block> moves = new ArrayList<>();
+                for (int i = 3; i < tokens.length; i++) {
+                    String[] move = tokens[i].split("[:,]");
+                    Block block = board.getBlock(move[0]).duplicate();
+                    block.setNewPosition(new Integer[] {Integer.parseInt(move[1]), Integer.parseInt(move[2])});
+                    moves.add(block);
+                }
+                addSolution(board, Integer.parseInt(tokens[2]), moves);
+                this.lines.add(line);
+            }
+            return true;
+        } catch (FileNotFoundException e) {
+            return false;
+        } catch (RuntimeException e) {
+            // a damaged or half-written line (missing tokens, bad numbers, unknown block): rebuild like a stale file
+            return false;
+        }
+    }
+
+    /** (Private)
+     * solve every CAMPAIGN level and keep its solution
+     */
+    private void build() {
+        for (String difficulty : DIFFICULTIES) {
+            for (int level = 1; level <= LEVELS; level++) {
+                String levelName = difficulty + "/" + level + ".txt";
+                GameBoard board = new GameBoard();
+                if (!board.read(RESOURCES + levelName)) continue;
+                Solver solver = SolverSelector.select(board.getBlocks(), board.getGridSize());
+                ArrayList<Block> solution = solver.solve();
+                if (solution == null || solution.isEmpty()) continue;
+                StringBuilder line = new StringBuilder(Long.toHexString(contentHash(board.getBoard())));
+                line.append(" ").append(levelName).append(" ").append(solution.size());
+                for (Block move : solution) {
+                    line.append(" ").append(move.getID()).append(":").append(move.getRow()).append(",").append(move.getCol());
+                }
+                this.lines.add(line.toString());
+                addSolution(board, solution.size(), solution);
+            }
+        }
+    }
+
+    /** (Private)
+     * write every solution to solutions.txt
+     */
+    private void save() {
+        try (PrintWriter writer = new PrintWriter(FILE_NAME)) {
+            writer.println("# <content hash> <level file> <number of moves> <id>:<row>,<col> ... (generated, see SolutionDatabase)");
+            for (String line : this.lines) writer.println(line);
+        } catch (IOException e) {
+            System.out.println("Saving solutions failed: " + e.getMessage());
+        }
+    }
+
+    /** (Private)
+     * index every board state along a solution
+     * @param board the starting board (moved to the end of the solution)
+     * @param numMoves the number of moves of the solution
+     * @param moves the moves of the solution, in playing order
+     */
+    private void addSolution(GameBoard board, int numMoves, ArrayList<Block> moves) {
+        for (int i = 0; i < moves.size(); i++) {
+            Block move = moves.get(i);
+            Integer[] from = board.getBlock(move.getID()).getPosition().get(0);
+            Integer[] to = move.getPosition().get(0);
+            BoardCode code = BoardCode.encode(board);
+            if (code != null) this.steps.put(code, new Step(numMoves - i, new Move(move.getID(), from, to)));
+            board.makeMove(move.getID(), to, true);
+        }
+    }
+
+    /**
+     * Regenerate solutions.txt from the level files
+     * @param args unused
+     */
+    public static void main(String[] args) {
+        SolutionDatabase database = new SolutionDatabase(false);
+        System.out.println("Saved " + database.lines.size() + " solutions to " + FILE_NAME);
+    }
+}
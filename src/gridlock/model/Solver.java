@@ -0,0 +1,52 @@
+package gridlock.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Solver interface for the search engines behind the hint functionality
+ * A solver is built for one board (see SolverSelector) and answers from the board state it was
+ * last rooted at. Every engine returns optimal answers; they only differ in speed and memory.
+ * A search that runs out of its SolverBudget stops early: its answers are "unknown" (null or -1,
+ * with isStopped true) and nothing is kept, so the next call searches again.
+ */
+public interface Solver {
+
+	/**
+	 * get an optimal solution from the current board state
+	 * @return the blocks moved, each in its new position, in playing order;
+	 * empty if the board is already solved, null if it cannot be solved
+	 */
+	ArrayList<Block> solve();
+
+	/**
+	 * get the next move of an optimal solution
+	 * @return the block to move in its new position, null if the board is solved or cannot be solved
+	 */
+	Block getHint();
+
+	/**
+	 * get the number of moves of an optimal solution
+	 * @return the number of moves to the end board state, -1 if it cannot be solved
+	 */
+	int getDistance();
+
+	/**
+	 * limit the following searches of this solver
+	 * @param budget the budget to spend, shared by every search until it is replaced
+	 */
+	void setBudget(SolverBudget budget);
+
+	/**
+	 * check if the last search ran out of budget before it finished
+	 * @return true if the last answer was "unknown" rather than final
+	 */
+	boolean isStopped();
+
+	/**
+	 * move the solver to a new current board state with the same blocks
+	 * @param blocks the list of blocks, in the same order as when the solver was created
+	 * @return true if the last solution still applies, so the next answer needs no search
+	 */
+	boolean reroot(List<Block> blocks);
+}
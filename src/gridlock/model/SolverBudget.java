@@ -0,0 +1,67 @@
+package gridlock.model;
+
+/**
+ * SolverBudget class, a cancellation token with an optional time and node limit for solver searches
+ * Searches spend the budget as they expand board states and stop early (answering "unknown")
+ * once it is cancelled, out of time or out of nodes. Interrupting the searching thread, e.g.
+ * by cancelling the JavaFX Task it runs in, counts as a cancel.
+ */
+public class SolverBudget {
+	// how many nodes may be expanded between two checks of the clock and the thread
+	private static final int CHECK_INTERVAL = 1 << 10;
+
+	private volatile boolean cancelled;
+	private final long deadline;
+	private final long nodeLimit;
+	private long nodes;
+	private long nextCheck;
+
+	/**
+	 * Class constructor for SolverBudget, without limits (it can still be cancelled)
+	 */
+	public SolverBudget() {
+		this(0, 0);
+	}
+
+	/**
+	 * Class constructor for SolverBudget
+	 * @param millis the wall-clock time, from now, searches may take, 0 for no limit
+	 * @param nodeLimit the number of board states searches may expand, 0 for no limit
+	 */
+	public SolverBudget(long millis, long nodeLimit) {
+		this.deadline = millis > 0 ? System.nanoTime() + millis * 1000000L : Long.MAX_VALUE;
+		this.nodeLimit = nodeLimit > 0 ? nodeLimit : Long.MAX_VALUE;
+	}
+
+	/**
+	 * stop every search using this budget at its next check
+	 */
+	public void cancel() {
+		this.cancelled = true;
+	}
+
+	/**
+	 * check if the budget has been cancelled
+	 * @return true if cancel was called
+	 */
+	public boolean isCancelled() {
+		return this.cancelled;
+	}
+
+	/**
+	 * account for expanded board states, called by one search thread at a time
+	 * @param count the number of board states just expanded
+	 * @return false if the search must stop
+	 */
+	boolean spend(int count) {
+		this.nodes += count;
+		if (this.nodes > this.nodeLimit || this.cancelled) return false;
+		if (this.nodes < this.nextCheck) return true;
+		this.nextCheck = this.nodes + CHECK_INTERVAL;
+		if (Thread.currentThread().isInterrupted()) {
+			this.cancelled = true;
+			return false;
+		}
+		return System.nanoTime() < this.deadline;
+	}
+}
@@ -0,0 +1,37 @@
+package gridlock.model;
+
+import java.util.ArrayList;
+
+/**
+ * SolverSelector class, picks the search engine for a board
+ * Boards with few blocks have small state spaces that plain BFS clears fastest, on one thread: their
+ * layers never grow to the BoardSolver.PARALLEL_LAYER states it takes to be worth spreading. Dense boards
+ * have few end board states, so meeting them in the middle halves the search depth cheaply. The rest are
+ * the deep, wide open boards whose layers do grow that large: on several cores they go to ParallelSolver,
+ * on one core to A*, whose heuristic prunes most of the states a whole BFS would expand. Every grid
+ * larger than the classic 6x6 (whose state spaces are far larger) goes to A* too.
+ */
+public class SolverSelector {
+	// block count up to which plain BFS is used
+	private static final int FEW_BLOCKS = 6;
+	// share of the grid covered from which a board counts as dense
+	private static final double DENSE = 2.0 / 3.0;
+	// states A* may keep before it switches to IDA*
+	private static final int MEMORY_LIMIT = 1 << 20;
+
+	/**
+	 * pick a solver for a board
+	 * @param blocks the list of blocks of the board
+	 * @param gridSize the length of the (square) grid
+	 * @return a new solver rooted at the board
+	 */
+	public static Solver select(ArrayList<Block> blocks, int gridSize) {
+		if (gridSize > Board.DEFAULT_SIZE) return new HeuristicSolver(blocks, gridSize, MEMORY_LIMIT);
+		if (blocks.size() <= FEW_BLOCKS) return new BoardSolver(blocks, gridSize);
+		int covered = 0;
+		for (Block block : blocks) covered += block.getSize();
+		if (covered >= DENSE * gridSize * gridSize) return new BidirectionalSolver(blocks, gridSize);
+		if (Runtime.getRuntime().availableProcessors() > 1) return new ParallelSolver(blocks, gridSize);
+		return new HeuristicSolver(blocks, gridSize, MEMORY_LIMIT);
+	}
+}
@@ -0,0 +1,125 @@
+package gridlock.model;
+
+import java.util.Arrays;
+
+/**
+ * StateTable class, an open-addressing hash table of packed board states used by the solver
+ * as its visited set. Keys are two longs (see BoardLayout.packLow/packHigh) stored densely in
+ * insertion order, so every state also gets a stable index; the hash slots only hold indexes.
+ * Nothing is boxed and nothing is allocated per lookup.
+ */
+final class StateTable {
+	private static final int EMPTY = -1;
+
+	private long[] keys;
+	private int[] slots;
+	private int size;
+
+	/**
+	 * Class constructor for StateTable
+	 * @param expected the number of states expected, used to size the table
+	 */
+	StateTable(int expected) {
+		int capacity = 16;
+		while (capacity < expected * 2) capacity <<= 1;
+		this.slots = new int[capacity];
+		Arrays.fill(this.slots, EMPTY);
+		this.keys = new long[Math.max(expected, 8) * 2];
+		this.size = 0;
+	}
+
+	/**
+	 * get the number of states in the table
+	 * @return the number of states
+	 */
+	int size() {
+		return this.size;
+	}
+
+	/**
+	 * add a state to the table if it is not there yet
+	 * @param low the low word of the packed state
+	 * @param high the high word of the packed state
+	 * @return the index of the new state, or -(index + 1) of the existing one
+	 */
+	int add(long low, long high) {
+		int mask = this.slots.length - 1;
+		int slot = hash(low, high) & mask;
+		while (this.slots[slot] != EMPTY) {
+			int index = this.slots[slot];
+			if (this.keys[2 * index] == low && this.keys[2 * index + 1] == high) return -(index + 1);
+			slot = (slot + 1) & mask;
+		}
+		if (2 * this.size == this.keys.length) this.keys = Arrays.copyOf(this.keys, this.keys.length * 2);
+		int index = this.size++;
+		this.keys[2 * index] = low;
+		this.keys[2 * index + 1] = high;
+		this.slots[slot] = index;
+		if (2 * this.size > this.slots.length) rehash(this.slots.length * 2);
+		return index;
+	}
+
+	/**
+	 * find a state in the table
+	 * @param low the low word of the packed state
+	 * @param high the high word of the packed state
+	 * @return the index of the state, or -1 if it is not in the table
+	 */
+	int indexOf(long low, long high) {
+		int mask = this.slots.length - 1;
+		int slot = hash(low, high) & mask;
+		while (this.slots[slot] != EMPTY) {
+			int index = this.slots[slot];
+			if (this.keys[2 * index] == low && this.keys[2 * index + 1] == high) return index;
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	/**
+	 * get the low word of a stored state
+	 * @param index the index of the state
+	 * @return the low word
+	 */
+	long getLow(int index) {
+		return this.keys[2 * index];
+	}
+
+	/**
+	 * get the high word of a stored state
+	 * @param index the index of the state
+	 * @return the high word
+	 */
+	long getHigh(int index) {
+		return this.keys[2 * index + 1];
+	}
+
+	/**
+	 * grow the slot array and put every stored state back in
+	 * @param capacity the new number of slots (a power of two)
+	 */
+	private void rehash(int capacity) {
+		this.slots = new int[capacity];
+		Arrays.fill(this.slots, EMPTY);
+		int mask = capacity - 1;
+		for (int index = 0; index < this.size; index++) {
+			int slot = hash(this.keys[2 * index], this.keys[2 * index + 1]) & mask;
+			while (this.slots[slot] != EMPTY) slot = (slot + 1) & mask;
+			this.slots[slot] = index;
+		}
+	}
+
+	/**
+	 * mix both words of a packed state into a slot hash
+	 * @param low the low word
+	 * @param high the high word
+	 * @return the hash
+	 */
+	private static int hash(long low, long high) {
+		long h = low * 0x9E3779B97F4A7C15L + high;
+		h ^= h >>> 32;
+		h *= 0xD6E8FEB86659FD93L;
+		h ^= h >>> 32;
+		return (int) h;
+	}
+}
@@ -21,7 +21,10 @@ import javafx.scene.effect.BoxBlur;
 import javafx.scene.effect.InnerShadow;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.AnchorPane;
+import javafx.scene.layout.ColumnConstraints;
+import javafx.scene.layout.GridPane;
 import javafx.scene.layout.Pane;
+import javafx.scene.layout.RowConstraints;
 import javafx.scene.shape.Polygon;
 import javafx.scene.shape.Rectangle;
 import javafx.stage.Modality;
@@ -37,6 +40,11 @@ import java.util.ArrayList;
  * Added by James. Edited by Ian, Alina
  */
 public class GameController {
+    // A hint search that takes longer than this gives up (there is then no hint for that board state)
+    private static final long HINT_MILLIS = 10000;
+    // Mapping a puzzle that takes longer than this gives up for good, hints are then searched one at a time
+    private static final long MAP_MILLIS = 1000;
+
     private SystemSettings settings;
     private GameBoard board;
     private Integer minMoves;
@@ -48,7 +56,9 @@ public class GameController {
     private ArrayList<MouseGestures> mgList;
 
     private Service<Void> solverThread;
-    private Block solverBlock;
+    private SolverBudget mapBudget;
+    private SolverBudget solverBudget;
+    private volatile Block solverBlock;
 
     @FXML
     private AnchorPane wrapper;
@@ -71,6 +81,10 @@ public class GameController {
     @FXML
     private Polygon goalArrow;
     @FXML
+    private GridPane grid;
+    @FXML
+    private Rectangle goal;
+    @FXML
     private Button undoButton;
     @FXML
     private Button redoButton;
@@ -115,6 +129,9 @@ public class GameController {
         // Initialise Board
         this.initBoard(oldBoard);
 
+        // Fit the Grid and the Exit to the Board
+        this.initGrid();
+
         this.board.setMinMoves();
         this.minMoves = this.board.getMinMoves();
         this.minMovesLabel.setText("Goal: " + this.minMoves);
@@ -184,6 +201,30 @@ public class GameController {
 
     }
 
+    /**
+     * Lays out the grid lines and the exit for the size and exit row of the board.
+     */
+    private void initGrid() {
+        // Same cell size as the Rectangles
+        int size = this.board.getGridSize();
+        int cell = 450 / size;
+        this.grid.getColumnConstraints().clear();
+        this.grid.getRowConstraints().clear();
+        for (int i = 0; i < size; i++) {
+            this.grid.getColumnConstraints().add(new ColumnConstraints(cell));
+            this.grid.getRowConstraints().add(new RowConstraints(cell));
+        }
+        this.grid.setPrefSize(cell * size, cell * size);
+
+        // Move the Exit beside the exit row (the FXML places it for row 2 of 6)
+        double top = AnchorPane.getTopAnchor(this.boardField) + this.board.getExitRow() * cell;
+        double shift = top - AnchorPane.getTopAnchor(this.goal);
+        AnchorPane.setBottomAnchor(this.goal, AnchorPane.getBottomAnchor(this.goal) - shift - cell + this.goal.getHeight());
+        AnchorPane.setTopAnchor(this.goal, top);
+        this.goal.setHeight(cell);
+        this.goalArrow.setLayoutY(this.goalArrow.getLayoutY() + shift + (cell - 75) / 2.0);
+    }
+
     /**
      * Initialises a thread to check for hints.
      */
@@ -192,10 +233,18 @@ public class GameController {
         this.solverThread = new Service<Void>() {
             @Override
             protected Task<Void> createTask() {
+                // Each run gets its own tokens, so a cancelled run stops at its next check
+                SolverBudget map = new SolverBudget(MAP_MILLIS, 0);
+                SolverBudget budget = new SolverBudget(HINT_MILLIS, 0);
+                mapBudget = map;
+                solverBudget = budget;
                 return new Task<Void>() {
                     @Override
                     protected Void call() throws Exception {
-                        solverBlock = board.getHint(false);
+                        // The first run maps the whole puzzle, later runs are lookups; the search keeps its own budget
+                        board.precomputeHints(map);
+                        Block hint = board.getHint(false, budget);
+                        if (!budget.isCancelled()) solverBlock = hint;
                         return null;
                     }
                 };
@@ -207,6 +256,10 @@ public class GameController {
             @Override
             public void changed(ObservableValue<? extends Number> observable, Number oldValue, Number newValue) {
                 movesLabel.setText("Moves: " + newValue.toString());
+                if (mapBudget != null) mapBudget.cancel();
+                if (solverBudget != null) solverBudget.cancel();
+                // the hint of the previous board state no longer applies
+                solverBlock = null;
                 solverThread.cancel();
                 solverThread.restart();
             }
@@ -536,6 +589,8 @@ public class GameController {
      */
     @FXML
     private void showHint(ActionEvent event) {
+        // No hint yet: the solver is still running or gave up
+        if (this.solverBlock == null) return;
         this.disableGameButtons();
         Integer[] newPosition = {this.solverBlock.getRow(), this.solverBlock.getCol()};
         // Find the ID of this block